@@ -1,11 +1,68 @@
 import computil.diags.StdLogger;
+import computil.parse.TextEdit;
+import computil.runtime.Natives;
+import rabbitc.BatchResult;
+import rabbitc.BuildCache;
+import rabbitc.CompileClient;
+import rabbitc.CompileServer;
+import rabbitc.IncrementalParser;
+import rabbitc.ModuleCompiler;
+import rabbitc.ModuleInterface;
 import rabbitc.RabbitCompiler;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public class Main {
 
+    private static final String BUILD_CACHE_OPTION = "--build-cache=";
+
+    private static final long BUILD_CACHE_LIMIT = 512L << 20;
+
+    private static final long WATCH_INTERVAL_MILLIS = 200;
+
     public static void main(String[] args) {
+        // --serve <socket> keeps a compiler running, --connect <socket> run|dis|transpile <in> <out> [flags] uses it
+        if (args.length == 2 && args[0].equals("--serve")){
+            serve(args[1]);
+            return;
+        }
+        // --batch <out dir> <in>... [flags] compiles every input to <out dir>/<name>.rbtc,
+        // reusing the outputs of unchanged inputs with --build-cache=<dir>
+        if (args.length >= 3 && args[0].equals("--batch")){
+            batch(args[1], Arrays.copyOfRange(args, 2, args.length));
+            return;
+        }
+        // --modules <root> <out> [flags] compiles the root and the modules it imports, with the interface
+        // summary of every module next to <out> as <module>.rbth
+        if (args.length >= 3 && args[0].equals("--modules")){
+            modules(args[1], args[2], Arrays.copyOfRange(args, 3, args.length));
+            return;
+        }
+        // --jit <in> [flags] compiles to jvm bytecode and runs the program in this jvm
+        if (args.length >= 2 && args[0].equals("--jit")){
+            jit(args[1], Arrays.copyOfRange(args, 2, args.length));
+            return;
+        }
+        // --interpret <in> [flags] compiles to rbt bytecode and runs the program with the interpreter in this jvm
+        if (args.length >= 2 && args[0].equals("--interpret")){
+            interpret(args[1], Arrays.copyOfRange(args, 2, args.length));
+            return;
+        }
+        // --watch <in> checks the input again whenever it changes, reparsing only the declarations an edit touched
+        if (args.length == 2 && args[0].equals("--watch")){
+            watch(args[1]);
+            return;
+        }
+        if (args.length >= 5 && args[0].equals("--connect")){
+            connect(args[1], args[2], args[3], args[4], Arrays.copyOfRange(args, 5, args.length));
+            return;
+        }
         compileTest();
         disTest();
         transpileTest();
@@ -24,11 +81,10 @@ public class Main {
     }
 
     private static void compile(String inPath, String outPath, String... args){
-        try (InputStream in = new FileInputStream(inPath)){
+        try (OutputStream out = new FileOutputStream(outPath)){
             RabbitCompiler compiler = new RabbitCompiler();
 
-            OutputStream out = new FileOutputStream(outPath);
-            int exitValue = compiler.run(in, out, StdLogger.getLogger(), args);
+            int exitValue = compiler.run(Path.of(inPath), out, new StdLogger(), args);
             if (exitValue == -1)
                 System.exit(exitValue);
 
@@ -38,11 +94,10 @@ public class Main {
     }
 
     private static void dis(String inPath, String outPath, String... args){
-        try (InputStream in = new FileInputStream(inPath)){
+        try (OutputStream out = new FileOutputStream(outPath)){
             RabbitCompiler compiler = new RabbitCompiler();
 
-            OutputStream out = new FileOutputStream(outPath);
-            int exitValue = compiler.dis(in, out, StdLogger.getLogger(), args);
+            int exitValue = compiler.dis(Path.of(inPath), out, new StdLogger(), args);
             if (exitValue == -1)
                 System.exit(exitValue);
 
@@ -52,11 +107,10 @@ public class Main {
     }
 
     private static void transpile(String inPath, String outPath, String... args){
-        try(InputStream in = new FileInputStream(inPath)) {
+        try(OutputStream out = new FileOutputStream(outPath)) {
 
             RabbitCompiler compiler = new RabbitCompiler();
-            OutputStream out = new FileOutputStream(outPath);
-            int exitValue = compiler.transpile(in, out, StdLogger.getLogger(), args);
+            int exitValue = compiler.transpile(Path.of(inPath), out, new StdLogger(), args);
             if (exitValue == -1)
                 System.exit(exitValue);
 
@@ -65,4 +119,134 @@ public class Main {
         }
     }
 
-}
\ No newline at end of file
+    private static void jit(String inPath, String... args){
+        try {
+            RabbitCompiler compiler = new RabbitCompiler();
+            int exitValue = compiler.jit(Path.of(inPath), Natives.standard(System.out), new StdLogger(), args);
+            if (exitValue == -1)
+                System.exit(exitValue);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void interpret(String inPath, String... args){
+        try {
+            RabbitCompiler compiler = new RabbitCompiler();
+            int exitValue = compiler.interpret(Path.of(inPath), Natives.standard(System.out), new StdLogger(), args);
+            if (exitValue == -1)
+                System.exit(exitValue);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void batch(String outDir, String[] args){
+        List<Path> inputs = new ArrayList<>();
+        List<String> flags = new ArrayList<>();
+        String cacheDir = null;
+        for (String arg : args){
+            if (arg.startsWith(BUILD_CACHE_OPTION)) cacheDir = arg.substring(BUILD_CACHE_OPTION.length());
+            else if (arg.startsWith("--")) flags.add(arg);
+            else inputs.add(Path.of(arg));
+        }
+
+        try {
+            BuildCache cache = cacheDir == null ? null : new BuildCache(Path.of(cacheDir), BUILD_CACHE_LIMIT);
+            RabbitCompiler compiler = new RabbitCompiler(null, cache);
+            BatchResult result = compiler.runAll(inputs, in -> Path.of(outDir, outputName(in)),
+                    Runtime.getRuntime().availableProcessors(), flags.toArray(String[]::new));
+            for (BatchResult.File file : result.files())
+                file.replay(new StdLogger(file.input().toString()));
+            if (cache != null)
+                cache.report(System.err);
+            if (result.exit() == -1)
+                System.exit(result.exit());
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String outputName(Path in){
+        String name = in.getFileName().toString();
+        return (name.endsWith(".rbt") ? name.substring(0, name.length() - 4) : name) + ".rbtc";
+    }
+
+    private static void modules(String rootPath, String outPath, String... args){
+        try (OutputStream out = new FileOutputStream(outPath)){
+            ModuleCompiler compiler = new ModuleCompiler(Runtime.getRuntime().availableProcessors());
+
+            int exitValue = compiler.run(Path.of(rootPath), out, new StdLogger(), args);
+            Path outDir = Path.of(outPath).toAbsolutePath().getParent();
+            for (Map.Entry<String, Path> module : compiler.getModules().entrySet()){
+                ModuleInterface summary = compiler.getInterface(module.getValue());
+                if (summary != null)
+                    Files.writeString(outDir.resolve(module.getKey() + ".rbth"), summary.getText());
+            }
+            if (exitValue == -1)
+                System.exit(exitValue);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void watch(String inPath){
+        Path in = Path.of(inPath);
+        RabbitCompiler compiler = new RabbitCompiler();
+        IncrementalParser parser = new IncrementalParser();
+        IncrementalParser.ParsedSource source = null;
+        while (true){
+            try {
+                String text = Files.readString(in);
+                if (source == null || !text.equals(source.getText())){
+                    long start = System.nanoTime();
+                    source = source == null
+                            ? parser.parse(text)
+                            : parser.reparse(source, TextEdit.between(source.getText(), text));
+                    int exitValue = compiler.check(source, new StdLogger());
+                    System.err.printf("%s: %s, %d of %d declarations parsed, %.1f ms%n", in, exitValue == 0 ? "ok" : "failed",
+                            source.getReparsedCount(), source.getDeclarationCount(), (System.nanoTime() - start) / 1e6);
+                }
+            } catch (IOException e) {
+                // an editor may be replacing the file, it is read again with the next poll
+                System.err.println("could not read " + in + ": " + e.getMessage());
+            }
+            try {
+                Thread.sleep(WATCH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void serve(String socket){
+        try (CompileServer server = new CompileServer(Path.of(socket))){
+            server.serve();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void connect(String socket, String command, String inPath, String outPath, String... args){
+        try (OutputStream out = new FileOutputStream(outPath)){
+            CompileClient client = new CompileClient(Path.of(socket));
+
+            int exitValue = switch (command){
+                case "run" -> client.run(Path.of(inPath), out, new StdLogger(), args);
+                case "dis" -> client.dis(Path.of(inPath), out, new StdLogger(), args);
+                case "transpile" -> client.transpile(Path.of(inPath), out, new StdLogger(), args);
+                default -> throw new IllegalArgumentException("unknown command " + command);
+            };
+            if (exitValue == -1)
+                System.exit(exitValue);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import rabbitc.TokenKind;
+
+/*
+ * Nanoseconds per TokenKind.fromLexem lookup on a keyword-heavy corpus of keywords, operators and
+ * identifiers, against the linear scan over all kinds it replaced.
+ */
+public class KeywordBench {
+
+    private static final int ROUNDS = 5;
+
+    private static final int LOOKUPS = 2_000_000;
+
+    private static final String[] CORPUS = ("fun let mut return if else while do struct impl template for as "
+            + "x y count nat new del + - == != -> { } ( ) ; : , . true false null value returns").split(" ");
+
+    public static void main(String[] args) {
+        char[][] corpus = new char[CORPUS.length][];
+        for (int i = 0; i < CORPUS.length; i++){
+            corpus[i] = CORPUS[i].toCharArray();
+            if (TokenKind.fromLexem(corpus[i], 0, corpus[i].length) != linear(CORPUS[i]))
+                throw new AssertionError(CORPUS[i]);
+        }
+
+        for (int round = 0; round < ROUNDS; round++){
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS; i++)
+                sum += linear(CORPUS[i % CORPUS.length]).ordinal();
+            long linear = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++){
+                char[] lexem = corpus[i % corpus.length];
+                sum += TokenKind.fromLexem(lexem, 0, lexem.length).ordinal();
+            }
+            long hashed = System.nanoTime() - start;
+
+            System.out.printf("linear %6.1f ns, hashed %6.1f ns per lookup (%d)%n",
+                    (double) linear / LOOKUPS, (double) hashed / LOOKUPS, sum);
+        }
+    }
+
+    // the lookup before the hash table, every spelling compared in turn
+    private static TokenKind linear(String lexem){
+        for (TokenKind kind : TokenKind.values())
+            if (kind.name != null && kind.name.equals(lexem))
+                return kind;
+        return TokenKind.IDENTIFIER;
+    }
+}
@@ -0,0 +1,50 @@
+package bench;
+
+import computil.diags.BufferedLogger;
+import computil.parse.BufferedUnicodeReader;
+import computil.parse.MappedSourceReader;
+import computil.parse.Names;
+import computil.parse.SourceReader;
+import computil.util.AllocatedBytes;
+import rabbitc.TokenBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Lexing throughput in MB/s and heap allocated per run of a generated source file read as a stream, as
+ * RabbitCompiler does for an InputStream, against the file mapped into memory, as it does for a Path. Run
+ * with the number of functions of the source as argument, 20000 by default.
+ */
+public class LexBench {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("lexbench", ".rbt");
+        try {
+            Files.write(file, Sources.generate(Sources.functions(args)));
+            System.out.printf("source: %.1f MB%n", Files.size(file) / 1e6);
+            for (int round = 0; round < ROUNDS; round++){
+                try (InputStream in = Files.newInputStream(file)){
+                    measure("stream", file, new BufferedUnicodeReader(in));
+                }
+                measure("mapped", file, MappedSourceReader.map(file));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void measure(String name, Path file, SourceReader reader) throws IOException {
+        long allocated = AllocatedBytes.ofCurrentThread();
+        long start = System.nanoTime();
+        TokenBuffer tokens = TokenBuffer.scan(reader, new Names(), new BufferedLogger());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        allocated = AllocatedBytes.ofCurrentThread() - allocated;
+        System.out.printf("%-8s %8.1f MB/s, %6.1f MB allocated, %d tokens%n",
+                name, Files.size(file) / 1e6 / seconds, allocated / 1e6, tokens.size());
+    }
+}
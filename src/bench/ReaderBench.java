@@ -0,0 +1,38 @@
+package bench;
+
+import computil.parse.BufferedUnicodeReader;
+import computil.parse.SourceReader;
+import computil.parse.UnicodeReader;
+
+import java.io.ByteArrayInputStream;
+import java.util.function.Function;
+
+/*
+ * Throughput of the source readers in MB/s, peeking and consuming every character of a generated source
+ * as the scanner does. Run with the number of functions of the source as argument, 20000 by default.
+ */
+public class ReaderBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        byte[] source = Sources.generate(Sources.functions(args));
+        System.out.printf("source: %.1f MB%n", source.length / 1e6);
+        for (int round = 0; round < ROUNDS; round++){
+            measure("UnicodeReader", source, in -> new UnicodeReader(in, 2));
+            measure("BufferedUnicodeReader", source, BufferedUnicodeReader::new);
+        }
+    }
+
+    private static void measure(String name, byte[] source, Function<ByteArrayInputStream, SourceReader> reader){
+        long start = System.nanoTime();
+        SourceReader in = reader.apply(new ByteArrayInputStream(source));
+        long sum = 0;
+        while (in.hasNext()){
+            sum += in.peek();
+            in.consume();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-24s %8.1f MB/s (%d)%n", name, source.length / 1e6 / seconds, sum);
+    }
+}
@@ -0,0 +1,31 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+
+// generated programs for the benchmarks, of the kind of large generated sources the compiler sees
+final class Sources {
+
+    private Sources() {}
+
+    static byte[] generate(int functions){
+        StringBuilder source = new StringBuilder("nat fun printi(x: int) -> void;\nnat fun println(x: str?) -> void;\n\n");
+        for (int i = 0; i < functions; i++){
+            if (i % 50 == 0)
+                source.append("struct Point").append(i).append(" {\n    mut x: int;\n    mut y: int;\n}\n\n");
+            source.append("// computes the ").append(i).append("th value\n")
+                    .append("fun f").append(i).append("(a: int, b: int) -> int {\n")
+                    .append("    let mut c: int = a + b * ").append(i).append(";\n")
+                    .append("    if c > a: printi(c); else printi(a);\n")
+                    .append("    while c < 100: c = c + 1;\n")
+                    .append("    println(\"f").append(i).append(" grüßt\");\n")
+                    .append("    return c;\n}\n\n");
+        }
+        source.append("fun main() -> void {\n    printi(f0(1, 2));\n}\n");
+        return source.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // the size of the benchmarked source, from the first argument if given
+    static int functions(String[] args){
+        return args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    }
+}
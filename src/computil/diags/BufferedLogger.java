@@ -0,0 +1,31 @@
+package computil.diags;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BufferedLogger implements Logger {
+
+    private final List<Diagnosis> diagnoses = new ArrayList<>();
+
+    @Override
+    public void error(Error error) {
+        diagnoses.add(error);
+    }
+
+    @Override
+    public void warning(Warning warning) {
+        diagnoses.add(warning);
+    }
+
+    public List<Diagnosis> getDiagnoses() {
+        return diagnoses;
+    }
+
+    public void replay(Logger logger){
+        for (Diagnosis diagnosis : diagnoses){
+            if (diagnosis instanceof Error error) logger.error(error);
+            else logger.warning((Warning) diagnosis);
+        }
+    }
+
+}
@@ -1,29 +1,41 @@
 package computil.diags;
 
+import java.io.PrintStream;
+
+// prints errors to stderr and warnings to stdout, how the compiler exits is up to its caller
 public class StdLogger implements Logger {
 
-    private static StdLogger logger;
+    private static final String ANSI_YELLOW = "\u001B[33m";
+    private static final String ANSI_RESET = "\u001B[0m";
+
+    private final PrintStream err;
+    private final PrintStream out;
+
+    // put in front of every message, to tell the files of a batch apart
+    private final String prefix;
 
-    public static StdLogger getLogger() {
-        if (logger == null)
-            logger = new StdLogger();
-        return logger;
+    public StdLogger(){
+        this(System.err, System.out, "");
     }
 
-    private static final String ANSI_YELLOW = "\u001B[33m";
-    private static final String ANSI_RESET = "\u001B[0m";
+    public StdLogger(String source){
+        this(System.err, System.out, source + ": ");
+    }
 
-    private StdLogger(){}
+    public StdLogger(PrintStream err, PrintStream out, String prefix){
+        this.err = err;
+        this.out = out;
+        this.prefix = prefix;
+    }
 
     @Override
     public void error(Error error) {
-        System.err.println(error);
-        System.exit(-1);
+        err.println(prefix + error);
     }
 
     @Override
     public void warning(Warning warning) {
-        System.out.println(ANSI_YELLOW + warning.getMessage() + ANSI_RESET);
+        out.println(ANSI_YELLOW + prefix + warning.getMessage() + ANSI_RESET);
     }
 
 }
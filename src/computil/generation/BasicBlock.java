@@ -0,0 +1,105 @@
+package computil.generation;
+
+import computil.generation.instructions.Instruction;
+import computil.generation.instructions.JumpInstruction;
+import computil.generation.instructions.Return;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class BasicBlock implements Iterable<Instruction> {
+
+    private final int id;
+
+    private final List<Instruction> instructions = new ArrayList<>();
+
+    // the block entered when this one ends without jumping, null if it ends in a goto or return
+    private BasicBlock fallThrough = null;
+
+    // the block entered by the jump ending this one
+    private BasicBlock jumpTarget = null;
+
+    BasicBlock(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int size(){
+        return instructions.size();
+    }
+
+    public boolean isEmpty(){
+        return instructions.isEmpty();
+    }
+
+    public List<Instruction> getInstructions() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    public BasicBlock getFallThrough() {
+        return fallThrough;
+    }
+
+    public BasicBlock getJumpTarget() {
+        return jumpTarget;
+    }
+
+    public List<BasicBlock> getSuccessors(){
+        List<BasicBlock> successors = new ArrayList<>(2);
+        if (fallThrough != null) successors.add(fallThrough);
+        if (jumpTarget != null && jumpTarget != fallThrough) successors.add(jumpTarget);
+        return successors;
+    }
+
+    public Instruction getTerminator(){
+        return instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+    }
+
+    // a terminated block takes no further instructions
+    public boolean isTerminated(){
+        Instruction last = getTerminator();
+        return last instanceof JumpInstruction || last instanceof Return;
+    }
+
+    // whether control can reach the block placed after this one without a jump
+    boolean fallsThrough(){
+        Instruction last = getTerminator();
+        return !(last instanceof Return) && !(last instanceof JumpInstruction jump && !jump.isConditional());
+    }
+
+    void append(Instruction instruction){
+        instructions.add(instruction);
+    }
+
+    void insert(int index, Instruction instruction){
+        instructions.add(index, instruction);
+    }
+
+    void setInstructions(List<Instruction> instructions){
+        this.instructions.clear();
+        this.instructions.addAll(instructions);
+    }
+
+    void setFallThrough(BasicBlock fallThrough) {
+        this.fallThrough = fallThrough;
+    }
+
+    void setJumpTarget(BasicBlock jumpTarget) {
+        this.jumpTarget = jumpTarget;
+    }
+
+    @Override
+    public Iterator<Instruction> iterator() {
+        return getInstructions().iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "B" + id;
+    }
+}
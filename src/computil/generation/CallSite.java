@@ -0,0 +1,4 @@
+package computil.generation;
+
+// a call of a template method, targets keep a cache of the method found for the receiver's struct per site
+public record CallSite(String method, int arguments) {}
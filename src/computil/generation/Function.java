@@ -1,10 +1,10 @@
 package computil.generation;
 
-import computil.generation.instructions.Instruction;
+import computil.generation.instructions.*;
 
 import java.util.*;
 
-public class Function extends BasicIRComponent implements Iterable<Instruction> {
+public class Function extends BasicIRComponent {
 
     private final String name;
 
@@ -16,13 +16,19 @@ public class Function extends BasicIRComponent implements Iterable<Instruction>
 
     private final Map<String, Integer> parameters = new LinkedHashMap<>();
 
-    private final List<Instruction> instructions = new ArrayList<>();
+    // basic blocks in the order they are laid out
+    private final List<BasicBlock> blocks = new ArrayList<>();
+
+    private BasicBlock currentBlock;
+
+    private int nextBlockId = 0;
 
     private boolean isMethod = false;
 
     public Function(String name, IRMediator mediator) {
         super(mediator);
         this.name = name;
+        blocks.add(currentBlock = newBlock());
     }
 
     public void accept(FunctionVisitor visitor){
@@ -42,7 +48,18 @@ public class Function extends BasicIRComponent implements Iterable<Instruction>
     }
 
     public int getStreamSize(){
-        return instructions.size();
+        int size = 0;
+        for (BasicBlock block : blocks)
+            size += block.size();
+        return size;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public BasicBlock getEntryBlock() {
+        return blocks.get(0);
     }
 
     public boolean isMethod() {
@@ -55,10 +72,35 @@ public class Function extends BasicIRComponent implements Iterable<Instruction>
 
 
     protected void append(Instruction instruction){
-        instructions.add(instruction);
+        if (currentBlock.isTerminated())
+            startBlock(newBlock());
+        currentBlock.append(instruction);
+    }
+
+    protected final BasicBlock newBlock(){
+        return new BasicBlock(nextBlockId++);
+    }
+
+    // lays out the block behind the current one, instructions are appended to it from now on
+    protected void startBlock(BasicBlock block){
+        if (currentBlock.fallsThrough())
+            currentBlock.setFallThrough(block);
+        blocks.add(block);
+        currentBlock = block;
+    }
+
+    protected void jump(JumpInstruction jump, BasicBlock target){
+        append(jump);
+        currentBlock.setJumpTarget(target);
+    }
+
+    // the point behind the instructions appended so far, which later instructions do not move
+    protected Position position(){
+        return new Position(currentBlock, currentBlock.size());
     }
-    protected void insert(int index, Instruction instruction){
-        instructions.add(index, instruction);
+
+    protected void insert(Position position, Instruction instruction){
+        position.block().insert(position.index(), instruction);
     }
 
 
@@ -75,12 +117,120 @@ public class Function extends BasicIRComponent implements Iterable<Instruction>
         stackSize = Math.max(stackSize, currStackSize);
     }
 
+    void setStackSize(int stackSize){
+        this.stackSize = stackSize;
+    }
+
+    // drops the other blocks from the layout and relinks fall-through edges to the blocks now placed behind
+    void retainBlocks(Collection<BasicBlock> retained){
+        blocks.retainAll(retained);
+        for (int i = 0; i < blocks.size(); i++){
+            BasicBlock block = blocks.get(i);
+            block.setFallThrough(block.fallsThrough() && i + 1 < blocks.size() ? blocks.get(i + 1) : null);
+            if (!(block.getTerminator() instanceof JumpInstruction))
+                block.setJumpTarget(null);
+        }
+    }
+
     protected void useLocal(int address){
         locals = Math.max(locals, address);
     }
 
-    @Override
-    public Iterator<Instruction> iterator() {
-        return instructions.iterator();
+    // the arguments are on the stack when the function is entered, every block is entered at the same depth
+    int maxStackSize(){
+        Map<BasicBlock, Integer> entryDepths = new HashMap<>();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        int max = parameters.size();
+        entryDepths.put(getEntryBlock(), max);
+        worklist.add(getEntryBlock());
+        while (!worklist.isEmpty()){
+            BasicBlock block = worklist.poll();
+            int depth = entryDepths.get(block);
+            for (Instruction instruction : block){
+                depth += stackEffect(instruction);
+                max = Math.max(max, depth);
+            }
+            for (BasicBlock successor : block.getSuccessors())
+                if (entryDepths.putIfAbsent(successor, depth) == null)
+                    worklist.add(successor);
+        }
+        return max;
+    }
+
+    private static int stackEffect(Instruction instruction){
+        return switch (instruction){
+            case PushNull i -> 1;
+            case PushInt i -> 1;
+            case PushBool i -> 1;
+            case LoadConst i -> 1;
+            case LoadLocal i -> 1;
+            case Load2AddInt i -> 1;
+            case LoadGetField i -> 1;
+            case Dup i -> 1;
+            case NewInstance i -> 1;
+            case StoreLocal i -> -1;
+            case Pop i -> -1;
+            case Free i -> -1;
+            case Return i -> -1;
+            case BinaryOperation i -> -1;
+            case BranchIfFalse i -> -1;
+            case BranchIfTrue i -> -1;
+            case CompareBranch i -> -2;
+            case PutField i -> -2;
+            case WriteArray i -> -2;
+            // the element takes the place of the array, the index is an operand
+            case ReadArray i -> 0;
+            case MakeArray i -> 1 - i.getSize();
+            // the receiver the method is looked up on is duplicated on top of the arguments
+            case InvokeTemplate i -> -i.getArguments();
+            case InvokingInstruction i -> 1 - i.getArguments();
+            default -> 0;
+        };
     }
+
+    // the instruction stream of all blocks in layout order, jumps resolved to instruction indices
+    public List<Instruction> linearize(){
+        return linearize(null);
+    }
+
+    // like linearize(), but line markers are recorded in the given table instead of being part of the stream
+    public List<Instruction> linearize(LineNumberTable lines){
+        int[] addresses = new int[nextBlockId];
+        Arrays.fill(addresses, -1);
+        int size = 0;
+        for (BasicBlock block : blocks){
+            addresses[block.getId()] = size;
+            size += lines == null ? block.size() : codeSize(block);
+        }
+
+        List<Instruction> stream = new ArrayList<>(size);
+        for (BasicBlock block : blocks){
+            BasicBlock target = block.getJumpTarget();
+            if (target != null){
+                if (addresses[target.getId()] < 0)
+                    throw new IllegalStateException("jump to " + target + " which is not laid out in " + name);
+                ((JumpInstruction) block.getTerminator()).setJumpAddress(addresses[target.getId()]);
+            }
+            if (lines == null){
+                stream.addAll(block.getInstructions());
+                continue;
+            }
+            for (Instruction instruction : block){
+                if (instruction instanceof NewLineNumber marker)
+                    lines.add(stream.size(), marker.getLine());
+                else stream.add(instruction);
+            }
+        }
+        return stream;
+    }
+
+    private static int codeSize(BasicBlock block){
+        int size = 0;
+        for (Instruction instruction : block)
+            if (!(instruction instanceof NewLineNumber))
+                size++;
+        return size;
+    }
+
+    protected record Position(BasicBlock block, int index) {}
 }
@@ -26,18 +26,32 @@ public class Generator extends TreeScanner<Scope<Generator.GenEntry>, TypeTree>
 
     private State state;
 
+    // line markers are left out for builds without debug information
+    private final boolean lineNumbers;
+
+    public Generator() {
+        this(true);
+    }
+
+    public Generator(boolean lineNumbers) {
+        this.lineNumbers = lineNumbers;
+    }
+
 
     public void generate(RootTree tree, Target target){
         Objects.requireNonNull(tree);
         Objects.requireNonNull(target);
         state = new State(new IRMediator());
         scan(tree, null);
+        // the sizes estimated while generating miss the effect of some instructions, targets need exact ones
+        for (Function function : state.mediator.getFunctions())
+            function.setStackSize(function.maxStackSize());
         target.write(state.mediator);
     }
 
     private void newLine(Tree tree){
         Location location = tree.getLocation();
-        if (location == null) return;
+        if (location == null || !lineNumbers) return;
         if (location.line() > state.currLine)
             state.currentFunction.append(new NewLineNumber(location.line(), state.mediator));
         state.currLine = Math.max(state.currLine, location.line());
@@ -319,37 +333,36 @@ public class Generator extends TreeScanner<Scope<Generator.GenEntry>, TypeTree>
     public TypeTree visitIfElseTree(IfElseTree ifElseTree, Scope<GenEntry> scope) {
         scan(ifElseTree.getCondition(), scope);
 
-        BranchIfFalse branchIf = new BranchIfFalse(0, state.mediator);
-        state.currentFunction.append(branchIf);
-        state.currentFunction.stackGrows(-1);
+        Function function = state.currentFunction;
+        BasicBlock end = function.newBlock();
+        BasicBlock elseBlock = ifElseTree.getElseBody() != null ? function.newBlock() : end;
 
-        scan(ifElseTree.getIfBody(), scope);
+        function.jump(new BranchIfFalse(state.mediator), elseBlock);
+        function.stackGrows(-1);
 
-        if (ifElseTree.getElseBody() == null){
-            int jmpAddr = state.currentFunction.getStreamSize();
-            branchIf.setJumpAddress(jmpAddr);
-        }
-        else {
-            Goto goto_ = new Goto(0, state.mediator);
-            state.currentFunction.append(goto_);
-            int ifEndIndex = state.currentFunction.getStreamSize();
+        function.startBlock(function.newBlock());
+        scan(ifElseTree.getIfBody(), scope);
 
+        if (ifElseTree.getElseBody() != null){
+            function.jump(new Goto(state.mediator), end);
+            function.startBlock(elseBlock);
             scan(ifElseTree.getElseBody(), scope);
-            int elseEndIndex = state.currentFunction.getStreamSize();
-            branchIf.setJumpAddress(ifEndIndex);
-            goto_.setJumpAddress(elseEndIndex);
         }
 
+        function.startBlock(end);
         return null;
     }
 
     @Override
     public TypeTree visitDoWhileTree(DoWhileTree doWhileTree, Scope<GenEntry> scope) {
-        int to = state.currentFunction.getStreamSize();
+        Function function = state.currentFunction;
+        BasicBlock body = function.newBlock();
+        function.startBlock(body);
         scan(doWhileTree.getBody(), scope);
         scan(doWhileTree.getCondition(), scope);
-        state.currentFunction.append(new BranchIfTrue(to, state.mediator));
-        state.currentFunction.stackGrows(-1);
+        function.jump(new BranchIfTrue(state.mediator), body);
+        function.stackGrows(-1);
+        function.startBlock(function.newBlock());
         return null;
     }
 
@@ -418,7 +431,8 @@ public class Generator extends TreeScanner<Scope<Generator.GenEntry>, TypeTree>
             int utf8Address = state.pool.putUTF8(name);
             int argc = args.size()+1;
             newLine(callMethodTree);
-            state.currentFunction.append(new InvokeTemplate(utf8Address, argc, state.mediator));
+            int site = state.mediator.registerCallSite(name, argc);
+            state.currentFunction.append(new InvokeTemplate(utf8Address, argc, site, state.mediator));
             state.currentFunction.stackGrows(-argc);
             return templates.get(type.name()).get(name);
         }
@@ -566,13 +580,13 @@ public class Generator extends TreeScanner<Scope<Generator.GenEntry>, TypeTree>
 
     @Override
     public TypeTree visitBinaryOperationTree(BinaryOperationTree operationTree, Scope<GenEntry> scope) {
-        int maybeCastIndex = state.currentFunction.getStreamSize();
         TypeTree left = scan(operationTree.getLeftOperand(), scope);
+        Function.Position maybeCastPosition = state.currentFunction.position();
         TypeTree right = scan(operationTree.getRightOperand(), scope);
         Operation op = operationTree.getOperation();
 
         if (requireImplicitCast(left, right, op))
-            state.currentFunction.insert(maybeCastIndex+1, new Int2Float(state.mediator));
+            state.currentFunction.insert(maybeCastPosition, new Int2Float(state.mediator));
 
         if (requireImplicitCast(right, left, op))
             state.currentFunction.append(new Int2Float(state.mediator));
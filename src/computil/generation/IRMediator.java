@@ -2,8 +2,11 @@ package computil.generation;
 
 import computil.generation.pool.Pool;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class IRMediator implements IRComponent, IRUnit {
@@ -12,6 +15,7 @@ public class IRMediator implements IRComponent, IRUnit {
     private Pool pool;
     private final Map<String, Function> functions = new HashMap<>();
     private final Map<String, Struct> structs = new HashMap<>();
+    private final List<CallSite> callSites = new ArrayList<>();
 
     public void registerFunction(String name){
         if (functions.containsKey(name))
@@ -33,6 +37,12 @@ public class IRMediator implements IRComponent, IRUnit {
         this.pool = pool;
     }
 
+    // returns the number of the new call site
+    public int registerCallSite(String method, int arguments){
+        callSites.add(new CallSite(method, arguments));
+        return callSites.size() - 1;
+    }
+
     public void setEntryPoint(int entryPoint) {
         this.entryPoint = entryPoint;
     }
@@ -51,6 +61,11 @@ public class IRMediator implements IRComponent, IRUnit {
         return entryPoint;
     }
 
+    @Override
+    public void remapEntryPoint(int[] newIndices) {
+        entryPoint = newIndices[entryPoint];
+    }
+
     @Override
     public Pool getPool() {
         return pool;
@@ -65,4 +80,9 @@ public class IRMediator implements IRComponent, IRUnit {
     public Collection<Struct> getStructs() {
         return structs.values();
     }
+
+    @Override
+    public List<CallSite> getCallSites() {
+        return Collections.unmodifiableList(callSites);
+    }
 }
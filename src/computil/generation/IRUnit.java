@@ -3,15 +3,22 @@ package computil.generation;
 import computil.generation.pool.Pool;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface IRUnit {
 
     int getEntryPoint();
 
+    // moves the entry point along with a reordered pool, newIndices holds the new index of every old one
+    void remapEntryPoint(int[] newIndices);
+
     Pool getPool();
 
     Collection<Function> getFunctions();
 
     Collection<Struct> getStructs();
 
+    // by the number INVOKE_TEMPLATE refers to them with
+    List<CallSite> getCallSites();
+
 }
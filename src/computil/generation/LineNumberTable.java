@@ -0,0 +1,47 @@
+package computil.generation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+// maps the instruction indices of a linearized function to the line the instructions from there on stem from
+public class LineNumberTable implements Iterable<LineNumberTable.Entry> {
+
+    // ordered by instruction index
+    private final List<Entry> entries = new ArrayList<>();
+
+    // an index keeps the last line recorded for it, a line equal to the previous one is not recorded again
+    public void add(int pc, int line){
+        if (!entries.isEmpty()){
+            Entry last = entries.get(entries.size() - 1);
+            if (last.line() == line)
+                return;
+            if (last.pc() == pc){
+                entries.remove(entries.size() - 1);
+                add(pc, line);
+                return;
+            }
+        }
+        entries.add(new Entry(pc, line));
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    public boolean isEmpty(){
+        return entries.isEmpty();
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return getEntries().iterator();
+    }
+
+    public record Entry(int pc, int line) {}
+}
@@ -0,0 +1,273 @@
+package computil.generation;
+
+import computil.generation.instructions.*;
+import computil.tree.Operation;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.function.Predicate;
+
+/*
+ * Rewrites short instruction sequences within the basic blocks of every function before the unit is
+ * handed to the wrapped target, then drops jumps to the block laid out next and blocks no longer reached.
+ * Jumps refer to blocks rather than to instruction indices, so they stay valid while blocks shrink and
+ * are resolved once the target linearizes the function. The stack size is recomputed from the result.
+ */
+public class PeepholeOptimizer implements Target {
+
+    private static final Predicate<Instruction> PURE_PUSH = instruction -> instruction instanceof PushNull
+            || instruction instanceof PushInt || instruction instanceof PushBool
+            || instruction instanceof LoadConst || instruction instanceof LoadLocal || instruction instanceof Dup;
+
+    // rules are tried in order at every position of a block, until none matches anywhere
+    private static final List<Rule> RULES = List.of(
+            // a value pushed only to be discarded
+            new Rule(List.of(PURE_PUSH, is(Pop.class)), (window, function) -> List.of()),
+            // a local stored and loaded right away which is read nowhere else keeps its value on the stack
+            new Rule(List.of(is(StoreLocal.class), is(LoadLocal.class)), (window, function) ->
+                    address(window.get(0)) == address(window.get(1)) && function.loads[address(window.get(0))] == 1
+                            ? List.of() : null),
+            // assigning a local to itself
+            new Rule(List.of(is(LoadLocal.class), is(StoreLocal.class)), (window, function) ->
+                    address(window.get(0)) == address(window.get(1)) ? List.of() : null),
+            new Rule(List.of(is(Swap.class), is(Swap.class)), (window, function) -> List.of()),
+            new Rule(List.of(is(Not.class), is(Not.class)), (window, function) -> List.of()),
+            new Rule(List.of(is(Negate.class), is(Negate.class)), (window, function) -> List.of()),
+            // branching on a negated condition
+            new Rule(List.of(is(Not.class), is(BranchIfFalse.class)), (window, function) ->
+                    List.of(new BranchIfTrue(function.mediator))),
+            new Rule(List.of(is(Not.class), is(BranchIfTrue.class)), (window, function) ->
+                    List.of(new BranchIfFalse(function.mediator))),
+            // branching on a constant condition either always or never jumps
+            new Rule(List.of(is(PushBool.class), is(BranchIfFalse.class)), (window, function) ->
+                    ((PushBool) window.get(0)).getValue() ? List.of() : List.of(new Goto(function.mediator))),
+            new Rule(List.of(is(PushBool.class), is(BranchIfTrue.class)), (window, function) ->
+                    ((PushBool) window.get(0)).getValue() ? List.of(new Goto(function.mediator)) : List.of()),
+            // a line without instructions of its own
+            new Rule(List.of(is(NewLineNumber.class), is(NewLineNumber.class)), (window, function) ->
+                    List.of(window.get(1)))
+    );
+
+    // superinstructions replace what the cleanup rules leave behind
+    private static final List<Rule> FUSIONS = List.of(
+            new Rule(List.of(is(LoadLocal.class), is(PushInt.class), intOperation(Operation.ADD, Operation.SUB), is(StoreLocal.class)),
+                    (window, function) -> incLocal(window.get(0), window.get(1), window.get(2), window.get(3), function)),
+            new Rule(List.of(is(PushInt.class), is(LoadLocal.class), intOperation(Operation.ADD), is(StoreLocal.class)),
+                    (window, function) -> incLocal(window.get(1), window.get(0), window.get(2), window.get(3), function)),
+            new Rule(List.of(is(LoadLocal.class), is(LoadLocal.class), intOperation(Operation.ADD)), (window, function) ->
+                    List.of(new Load2AddInt(address(window.get(0)), address(window.get(1)), function.mediator))),
+            new Rule(List.of(is(LoadLocal.class), is(GetField.class)), (window, function) ->
+                    List.of(new LoadGetField(address(window.get(0)), address(window.get(1)), function.mediator))),
+            new Rule(List.of(PeepholeOptimizer::isComparison, is(BranchIfFalse.class)), (window, function) ->
+                    List.of(new CompareBranch(((BinaryOperation) window.get(0)).getOperation(), false, function.mediator))),
+            new Rule(List.of(PeepholeOptimizer::isComparison, is(BranchIfTrue.class)), (window, function) ->
+                    List.of(new CompareBranch(((BinaryOperation) window.get(0)).getOperation(), true, function.mediator)))
+    );
+
+    private final Target target;
+
+    private final boolean superinstructions;
+
+    private final List<FunctionStatistics> statistics = new ArrayList<>();
+
+    public PeepholeOptimizer(Target target) {
+        this(target, false);
+    }
+
+    // the target has to understand the fused opcodes, see Opcode
+    public PeepholeOptimizer(Target target, boolean superinstructions) {
+        this.target = Objects.requireNonNull(target);
+        this.superinstructions = superinstructions;
+    }
+
+    @Override
+    public void write(IRUnit unit) {
+        for (Function function : unit.getFunctions()){
+            int before = function.getStreamSize();
+            optimize(function);
+            statistics.add(new FunctionStatistics(function.getName(), before, function.getStreamSize()));
+        }
+        target.write(unit);
+    }
+
+    public List<FunctionStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    public void report(PrintStream out){
+        out.printf("%-32s %8s %8s%n", "function", "before", "after");
+        int before = 0, after = 0;
+        for (FunctionStatistics function : statistics){
+            out.printf("%-32s %8d %8d%n", function.name(), function.before(), function.after());
+            before += function.before();
+            after += function.after();
+        }
+        out.printf("%-32s %8d %8d%n", "total", before, after);
+    }
+
+    private void optimize(Function function){
+        FunctionState state = new FunctionState(function);
+        boolean changed;
+        do {
+            changed = false;
+            for (BasicBlock block : function.getBlocks())
+                changed |= rewrite(block, RULES, state);
+            changed |= removeJumpsToNext(function);
+            changed |= removeUnreachableBlocks(function);
+        } while (changed);
+        if (superinstructions)
+            for (BasicBlock block : function.getBlocks())
+                rewrite(block, FUSIONS, state);
+        function.setStackSize(function.maxStackSize());
+    }
+
+    private boolean rewrite(BasicBlock block, List<Rule> rules, FunctionState state){
+        List<Instruction> instructions = new ArrayList<>(block.getInstructions());
+        boolean changed = false;
+        int i = 0;
+        while (i < instructions.size()){
+            boolean matched = false;
+            for (Rule rule : rules){
+                int length = rule.pattern.size();
+                if (i + length > instructions.size() || !rule.matches(instructions, i)) continue;
+                List<Instruction> window = instructions.subList(i, i + length);
+                List<Instruction> replacement = rule.rewrite.apply(List.copyOf(window), state);
+                if (replacement == null) continue;
+                state.replaced(window, replacement);
+                window.clear();
+                window.addAll(replacement);
+                // the replacement may complete a pattern starting before it
+                i = Math.max(0, i - 1);
+                matched = changed = true;
+                break;
+            }
+            if (!matched) i++;
+        }
+        if (changed){
+            block.setInstructions(instructions);
+            // a branch may have become a goto or vanished
+            if (!(block.getTerminator() instanceof JumpInstruction))
+                block.setJumpTarget(null);
+            if (!block.fallsThrough())
+                block.setFallThrough(null);
+        }
+        return changed;
+    }
+
+    // jumps to the instruction the block falls through to anyway, empty blocks resolve to the same address
+    private boolean removeJumpsToNext(Function function){
+        List<BasicBlock> blocks = function.getBlocks();
+        boolean changed = false;
+        for (int i = 0; i + 1 < blocks.size(); i++){
+            BasicBlock block = blocks.get(i);
+            BasicBlock target = block.getJumpTarget();
+            if (target == null || skipEmpty(target) != skipEmpty(blocks.get(i + 1))) continue;
+
+            List<Instruction> instructions = new ArrayList<>(block.getInstructions());
+            Instruction jump = instructions.remove(instructions.size() - 1);
+            if (((JumpInstruction) jump).isConditional())
+                instructions.add(new Pop(function.mediator));
+            block.setInstructions(instructions);
+            block.setJumpTarget(null);
+            block.setFallThrough(blocks.get(i + 1));
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static BasicBlock skipEmpty(BasicBlock block){
+        while (block.isEmpty() && block.getFallThrough() != null)
+            block = block.getFallThrough();
+        return block;
+    }
+
+    private boolean removeUnreachableBlocks(Function function){
+        Set<BasicBlock> reached = new HashSet<>();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        worklist.add(function.getEntryBlock());
+        while (!worklist.isEmpty()){
+            BasicBlock block = worklist.poll();
+            if (reached.add(block))
+                worklist.addAll(block.getSuccessors());
+        }
+        if (reached.size() == function.getBlocks().size())
+            return false;
+        function.retainBlocks(reached);
+        return true;
+    }
+
+    private static Predicate<Instruction> is(Class<? extends Instruction> type){
+        return type::isInstance;
+    }
+
+    private static Predicate<Instruction> intOperation(Operation... operations){
+        Set<Operation> accepted = EnumSet.copyOf(Arrays.asList(operations));
+        return instruction -> instruction instanceof BinaryOperation operation
+                && operation.getType().equals("int") && accepted.contains(operation.getOperation());
+    }
+
+    private static boolean isComparison(Instruction instruction){
+        return instruction instanceof BinaryOperation operation && switch (operation.getOperation()){
+            case EQUALS, NOT_EQUALS, LESS, GREATER, LESS_EQ, GREATER_EQ -> true;
+            default -> false;
+        };
+    }
+
+    // the delta is encoded in a signed byte
+    private static List<Instruction> incLocal(Instruction load, Instruction push, Instruction operation,
+                                              Instruction store, FunctionState function){
+        int delta = ((PushInt) push).getValue();
+        if (((BinaryOperation) operation).getOperation() == Operation.SUB) delta = -delta;
+        if (address(load) != address(store) || delta < Byte.MIN_VALUE || delta > Byte.MAX_VALUE)
+            return null;
+        return List.of(new IncLocal(address(load), delta, function.mediator));
+    }
+
+    private static int address(Instruction instruction){
+        return ((AddressedBasedInstruction) instruction).getAddress();
+    }
+
+
+    public record FunctionStatistics(String name, int before, int after) {}
+
+    private record Rule(List<Predicate<Instruction>> pattern, Rewrite rewrite) {
+        private boolean matches(List<Instruction> instructions, int start){
+            for (int i = 0; i < pattern.size(); i++)
+                if (!pattern.get(i).test(instructions.get(start + i)))
+                    return false;
+            return true;
+        }
+    }
+
+    // returns the instructions replacing the window, or null to leave it as it is
+    @FunctionalInterface
+    private interface Rewrite {
+        List<Instruction> apply(List<Instruction> window, FunctionState function);
+    }
+
+    private static final class FunctionState {
+        private final IRMediator mediator;
+
+        // how often each local is loaded within the function
+        private final int[] loads;
+
+        private FunctionState(Function function) {
+            mediator = function.mediator;
+            loads = new int[function.getLocals()];
+            for (BasicBlock block : function.getBlocks())
+                for (Instruction instruction : block)
+                    if (instruction instanceof LoadLocal load)
+                        loads[load.getAddress()]++;
+        }
+
+        private void replaced(List<Instruction> window, List<Instruction> replacement){
+            for (Instruction instruction : window)
+                if (instruction instanceof LoadLocal load)
+                    loads[load.getAddress()]--;
+            for (Instruction instruction : replacement)
+                if (instruction instanceof LoadLocal load)
+                    loads[load.getAddress()]++;
+        }
+    }
+
+}
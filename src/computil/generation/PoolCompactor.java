@@ -0,0 +1,68 @@
+package computil.generation;
+
+import computil.generation.instructions.Instruction;
+import computil.generation.instructions.PoolReference;
+import computil.generation.pool.Pool;
+
+import java.util.*;
+
+/*
+ * Reorders the constant pool of pools too large for single byte indices, so the constants referenced by
+ * the most instructions get the low indices, which the targets encode in a single byte. Ties and
+ * constants no instruction refers to keep their order. Instructions, struct methods and the entry point
+ * are moved along before the unit is handed to the wrapped target.
+ */
+public class PoolCompactor implements Target {
+
+    // indices below this fit a single byte operand
+    private static final int SHORT_INDICES = 0x100;
+
+    private final Target target;
+
+    public PoolCompactor(Target target) {
+        this.target = Objects.requireNonNull(target);
+    }
+
+    @Override
+    public void write(IRUnit unit) {
+        Pool pool = unit.getPool();
+        if (pool.size() > SHORT_INDICES)
+            compact(pool, unit);
+        target.write(unit);
+    }
+
+    private void compact(Pool pool, IRUnit unit){
+        int[] references = new int[pool.size()];
+        for (Function function : unit.getFunctions())
+            for (BasicBlock block : function.getBlocks())
+                for (Instruction instruction : block)
+                    if (instruction instanceof PoolReference reference)
+                        references[reference.getAddress()]++;
+
+        Integer[] order = new Integer[pool.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        // stable, so ties keep their order
+        Arrays.sort(order, (a, b) -> Integer.compare(references[b], references[a]));
+
+        int[] oldIndices = new int[order.length];
+        int[] newIndices = new int[order.length];
+        for (int i = 0; i < order.length; i++){
+            oldIndices[i] = order[i];
+            newIndices[order[i]] = i;
+        }
+        pool.reorder(oldIndices);
+
+        for (Function function : unit.getFunctions())
+            for (BasicBlock block : function.getBlocks())
+                for (Instruction instruction : block)
+                    if (instruction instanceof PoolReference reference)
+                        reference.setPoolAddress(newIndices[reference.getAddress()]);
+
+        for (Struct struct : unit.getStructs())
+            for (Map.Entry<String, Integer> method : struct.getMethods().entrySet())
+                method.setValue(newIndices[method.getValue()]);
+
+        unit.remapEntryPoint(newIndices);
+    }
+}
@@ -2,14 +2,15 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public class BranchIfFalse extends AddressedBasedInstruction {
+public class BranchIfFalse extends JumpInstruction {
 
-    public BranchIfFalse(int address, IRMediator mediator) {
-        super(address, mediator);
+    public BranchIfFalse(IRMediator mediator) {
+        super(mediator);
     }
 
-    public void setJumpAddress(int newAddress){
-        address = newAddress;
+    @Override
+    public boolean isConditional() {
+        return true;
     }
 
     @Override
@@ -2,14 +2,15 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public class BranchIfTrue extends AddressedBasedInstruction {
+public class BranchIfTrue extends JumpInstruction {
 
-    public BranchIfTrue(int address, IRMediator mediator) {
-        super(address, mediator);
+    public BranchIfTrue(IRMediator mediator) {
+        super(mediator);
     }
 
-    void setJumpAddress(int newAddress){
-        address = newAddress;
+    @Override
+    public boolean isConditional() {
+        return true;
     }
 
     @Override
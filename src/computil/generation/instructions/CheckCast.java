@@ -2,7 +2,7 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public class CheckCast extends AddressedBasedInstruction {
+public class CheckCast extends AddressedBasedInstruction implements PoolReference {
 
     public CheckCast(int address, IRMediator mediator) {
         super(address, mediator);
@@ -12,4 +12,9 @@ public class CheckCast extends AddressedBasedInstruction {
     public void accept(InstructionVisitor visitor) {
         visitor.visitCheckCast(this);
     }
+
+    @Override
+    public void setPoolAddress(int poolAddress) {
+        address = poolAddress;
+    }
 }
@@ -0,0 +1,36 @@
+package computil.generation.instructions;
+
+import computil.generation.IRMediator;
+import computil.tree.Operation;
+
+// a comparison followed by BRANCH_NOT_ZERO if jumping on true, by BRANCH_ZERO otherwise
+public class CompareBranch extends JumpInstruction {
+
+    private final Operation comparison;
+
+    private final boolean jumpIfTrue;
+
+    public CompareBranch(Operation comparison, boolean jumpIfTrue, IRMediator mediator) {
+        super(mediator);
+        this.comparison = comparison;
+        this.jumpIfTrue = jumpIfTrue;
+    }
+
+    public Operation getComparison() {
+        return comparison;
+    }
+
+    public boolean isJumpIfTrue() {
+        return jumpIfTrue;
+    }
+
+    @Override
+    public boolean isConditional() {
+        return true;
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visitCompareBranch(this);
+    }
+}
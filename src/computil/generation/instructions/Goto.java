@@ -2,13 +2,15 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public class Goto extends AddressedBasedInstruction {
-    public Goto(int address, IRMediator mediator) {
-        super(address, mediator);
+public class Goto extends JumpInstruction {
+
+    public Goto(IRMediator mediator) {
+        super(mediator);
     }
 
-    public void setJumpAddress(int newAddress){
-        address = newAddress;
+    @Override
+    public boolean isConditional() {
+        return false;
     }
 
     @Override
@@ -0,0 +1,23 @@
+package computil.generation.instructions;
+
+import computil.generation.IRMediator;
+
+// LOAD_LOCAL address; PUSH_INT delta; ADD_I; STORE_LOCAL address
+public class IncLocal extends AddressedBasedInstruction {
+
+    private final int delta;
+
+    public IncLocal(int address, int delta, IRMediator mediator) {
+        super(address, mediator);
+        this.delta = delta;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visitIncLocal(this);
+    }
+}
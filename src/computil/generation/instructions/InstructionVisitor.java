@@ -65,4 +65,13 @@ public interface InstructionVisitor {
 
     void visitNewLineNumber(NewLineNumber newLineNumber);
 
+
+    void visitLoad2AddInt(Load2AddInt load2AddInt);
+
+    void visitLoadGetField(LoadGetField loadGetField);
+
+    void visitCompareBranch(CompareBranch compareBranch);
+
+    void visitIncLocal(IncLocal incLocal);
+
 }
@@ -4,8 +4,16 @@ import computil.generation.IRMediator;
 
 public class InvokeTemplate extends InvokingInstruction {
 
-    public InvokeTemplate(int address, int argc, IRMediator mediator) {
+    // the number of the call site, see IRUnit.getCallSites
+    private final int site;
+
+    public InvokeTemplate(int address, int argc, int site, IRMediator mediator) {
         super(address, argc, mediator);
+        this.site = site;
+    }
+
+    public int getSite() {
+        return site;
     }
 
     @Override
@@ -2,7 +2,7 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public abstract class InvokingInstruction extends AddressedBasedInstruction {
+public abstract class InvokingInstruction extends AddressedBasedInstruction implements PoolReference {
 
     private final int arguments;
 
@@ -14,4 +14,9 @@ public abstract class InvokingInstruction extends AddressedBasedInstruction {
     public int getArguments() {
         return arguments;
     }
+
+    @Override
+    public void setPoolAddress(int poolAddress) {
+        address = poolAddress;
+    }
 }
@@ -0,0 +1,18 @@
+package computil.generation.instructions;
+
+import computil.generation.IRMediator;
+
+public abstract class JumpInstruction extends AddressedBasedInstruction {
+
+    protected JumpInstruction(IRMediator mediator) {
+        super(0, mediator);
+    }
+
+    // jumps target basic blocks, their address is only known once the function is linearized
+    public void setJumpAddress(int newAddress){
+        address = newAddress;
+    }
+
+    public abstract boolean isConditional();
+
+}
@@ -0,0 +1,30 @@
+package computil.generation.instructions;
+
+import computil.generation.IRMediator;
+
+// LOAD_LOCAL first; LOAD_LOCAL second; ADD_I
+public class Load2AddInt extends Instruction {
+
+    private final int first;
+
+    private final int second;
+
+    public Load2AddInt(int first, int second, IRMediator mediator) {
+        super(mediator);
+        this.first = first;
+        this.second = second;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visitLoad2AddInt(this);
+    }
+}
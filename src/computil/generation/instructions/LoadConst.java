@@ -2,7 +2,7 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public class LoadConst extends AddressedBasedInstruction {
+public class LoadConst extends AddressedBasedInstruction implements PoolReference {
 
     public LoadConst(int address, IRMediator mediator) {
         super(address, mediator);
@@ -12,4 +12,9 @@ public class LoadConst extends AddressedBasedInstruction {
     public void accept(InstructionVisitor visitor) {
         visitor.visitLoadConst(this);
     }
+
+    @Override
+    public void setPoolAddress(int poolAddress) {
+        address = poolAddress;
+    }
 }
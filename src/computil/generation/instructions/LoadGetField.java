@@ -0,0 +1,30 @@
+package computil.generation.instructions;
+
+import computil.generation.IRMediator;
+
+// LOAD_LOCAL local; GET_FIELD field
+public class LoadGetField extends Instruction {
+
+    private final int local;
+
+    private final int field;
+
+    public LoadGetField(int local, int field, IRMediator mediator) {
+        super(mediator);
+        this.local = local;
+        this.field = field;
+    }
+
+    public int getLocal() {
+        return local;
+    }
+
+    public int getField() {
+        return field;
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visitLoadGetField(this);
+    }
+}
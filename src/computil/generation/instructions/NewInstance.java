@@ -2,7 +2,7 @@ package computil.generation.instructions;
 
 import computil.generation.IRMediator;
 
-public class NewInstance extends AddressedBasedInstruction {
+public class NewInstance extends AddressedBasedInstruction implements PoolReference {
 
     public NewInstance(int address, IRMediator mediator) {
         super(address, mediator);
@@ -12,4 +12,9 @@ public class NewInstance extends AddressedBasedInstruction {
     public void accept(InstructionVisitor visitor) {
         visitor.visitNewInstance(this);
     }
+
+    @Override
+    public void setPoolAddress(int poolAddress) {
+        address = poolAddress;
+    }
 }
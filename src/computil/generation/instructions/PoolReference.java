@@ -0,0 +1,10 @@
+package computil.generation.instructions;
+
+// an instruction whose address is an index into the constant pool
+public interface PoolReference {
+
+    int getAddress();
+
+    void setPoolAddress(int poolAddress);
+
+}
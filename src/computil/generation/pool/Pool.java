@@ -2,14 +2,15 @@ package computil.generation.pool;
 
 import computil.generation.*;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 public class Pool extends BasicIRComponent implements Iterable<PoolConstant<?>> {
 
     private final List<PoolConstant<?>> entries = new ArrayList<>();
 
+    // index of every entry, keyed on tag and value
+    private final Map<PoolConstant<?>, Integer> indices = new HashMap<>();
+
     public Pool(IRMediator mediator) {
         super(mediator);
         mediator.registerPool(this);
@@ -57,11 +58,25 @@ public class Pool extends BasicIRComponent implements Iterable<PoolConstant<?>>
 
 
     private int putIfAbsent(PoolConstant<?> entry){
-        int idx = entries.indexOf(entry);
-        if (idx != -1) return idx;
-        idx = entries.size();
+        Integer idx = indices.putIfAbsent(entry, entries.size());
+        if (idx != null) return idx;
         entries.add(entry);
-        return idx;
+        return entries.size() - 1;
+    }
+
+    // places the entry at index order[i] at index i, references to the entries have to be moved along
+    public void reorder(int[] order){
+        if (order.length != entries.size())
+            throw new IllegalArgumentException("order covers " + order.length + " of " + entries.size() + " entries");
+        List<PoolConstant<?>> reordered = new ArrayList<>(entries.size());
+        for (int index : order)
+            reordered.add(entries.get(index));
+        entries.clear();
+        entries.addAll(reordered);
+        indices.clear();
+        for (int i = 0; i < entries.size(); i++)
+            if (indices.put(entries.get(i), i) != null)
+                throw new IllegalArgumentException("order is not a permutation");
     }
 
 
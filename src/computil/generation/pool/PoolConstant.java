@@ -33,6 +33,6 @@ public abstract class PoolConstant<T> extends BasicIRComponent {
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return Objects.hash(getTag(), value);
     }
 }
@@ -0,0 +1,55 @@
+package computil.generation.targets.jvm;
+
+import java.util.Arrays;
+
+// a growing big endian byte array
+class Bytes {
+
+    private byte[] bytes = new byte[64];
+
+    private int size = 0;
+
+    int size(){
+        return size;
+    }
+
+    void u1(int value){
+        ensure(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void u2(int value){
+        ensure(2);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    void u4(int value){
+        u2(value >>> 16);
+        u2(value);
+    }
+
+    void putU2(int position, int value){
+        bytes[position] = (byte) (value >>> 8);
+        bytes[position + 1] = (byte) value;
+    }
+
+    void write(Bytes other){
+        write(other.bytes, other.size);
+    }
+
+    void write(byte[] other, int length){
+        ensure(length);
+        System.arraycopy(other, 0, bytes, size, length);
+        size += length;
+    }
+
+    byte[] toByteArray(){
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensure(int n){
+        if (size + n > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+    }
+}
@@ -0,0 +1,198 @@
+package computil.generation.targets.jvm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Assembles a class file with static fields and methods. The class has version 49, the last one the
+ * jvm verifies by inferring the types itself, so no stack map frames have to be computed.
+ */
+class ClassFileWriter {
+
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private final Bytes pool = new Bytes();
+
+    private int poolCount = 1;
+
+    // entries by kind and value, so each is written once
+    private final Map<String, Integer> entries = new HashMap<>();
+
+    private final Bytes fields = new Bytes();
+
+    private int fieldCount = 0;
+
+    private final Bytes methods = new Bytes();
+
+    private int methodCount = 0;
+
+    private final String name;
+
+    ClassFileWriter(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int utf8(String s){
+        Integer index = entries.get("U" + s);
+        if (index != null) return index;
+        Bytes encoded = new Bytes();
+        // modified utf-8, which encodes the 0 char in 2 bytes and surrogates one by one
+        for (int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if (c >= 1 && c <= 0x7F)
+                encoded.u1(c);
+            else if (c <= 0x7FF){
+                encoded.u1(0xC0 | (c >> 6));
+                encoded.u1(0x80 | (c & 0x3F));
+            }
+            else {
+                encoded.u1(0xE0 | (c >> 12));
+                encoded.u1(0x80 | ((c >> 6) & 0x3F));
+                encoded.u1(0x80 | (c & 0x3F));
+            }
+        }
+        if (encoded.size() > 0xFFFF)
+            throw new IllegalStateException("string constant of " + encoded.size() + " bytes is too long for a class file");
+        pool.u1(1);
+        pool.u2(encoded.size());
+        pool.write(encoded);
+        return add("U" + s, 1);
+    }
+
+    int integer(int value){
+        Integer index = entries.get("I" + value);
+        if (index != null) return index;
+        pool.u1(3);
+        pool.u4(value);
+        return add("I" + value, 1);
+    }
+
+    int floatConstant(float value){
+        int bits = Float.floatToRawIntBits(value);
+        Integer index = entries.get("F" + bits);
+        if (index != null) return index;
+        pool.u1(4);
+        pool.u4(bits);
+        return add("F" + bits, 1);
+    }
+
+    int string(String s){
+        return reference("S", 8, utf8(s));
+    }
+
+    int classRef(String internalName){
+        return reference("C", 7, utf8(internalName));
+    }
+
+    int fieldRef(String owner, String name, String descriptor){
+        return memberRef("R", 9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor){
+        return memberRef("M", 10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor){
+        return memberRef("N", 11, owner, name, descriptor);
+    }
+
+    private int memberRef(String kind, int tag, String owner, String name, String descriptor){
+        String key = kind + owner + "." + name + ":" + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        pool.u1(tag);
+        pool.u2(ownerIndex);
+        pool.u2(nameAndType);
+        return add(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor){
+        String key = "T" + name + ":" + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) return index;
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        pool.u1(12);
+        pool.u2(nameIndex);
+        pool.u2(descriptorIndex);
+        return add(key, 1);
+    }
+
+    private int reference(String kind, int tag, int utf8){
+        String key = kind + utf8;
+        Integer index = entries.get(key);
+        if (index != null) return index;
+        pool.u1(tag);
+        pool.u2(utf8);
+        return add(key, 1);
+    }
+
+    private int add(String key, int slots){
+        int index = poolCount;
+        poolCount += slots;
+        if (poolCount > 0xFFFF)
+            throw new IllegalStateException("too many constants for a class file");
+        entries.put(key, index);
+        return index;
+    }
+
+    void field(int access, String name, String descriptor){
+        fields.u2(access);
+        fields.u2(utf8(name));
+        fields.u2(utf8(descriptor));
+        fields.u2(0);
+        fieldCount++;
+    }
+
+    void method(int access, String name, String descriptor, CodeWriter code){
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > 0xFFFF)
+            throw new IllegalStateException(name + " is too large for a jvm method");
+        methods.u2(access);
+        methods.u2(utf8(name));
+        methods.u2(utf8(descriptor));
+        methods.u2(1);
+        methods.u2(utf8("Code"));
+        methods.u4(12 + bytes.length);
+        methods.u2(code.getMaxStack());
+        methods.u2(code.getMaxLocals());
+        methods.u4(bytes.length);
+        methods.write(bytes, bytes.length);
+        // no exception table and no attributes
+        methods.u2(0);
+        methods.u2(0);
+        methodCount++;
+    }
+
+    byte[] toByteArray(){
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        Bytes out = new Bytes();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(VERSION);
+        out.u2(poolCount);
+        out.write(pool);
+        out.u2(ACC_FINAL | ACC_SUPER);
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(0);
+        out.u2(fieldCount);
+        out.write(fields);
+        out.u2(methodCount);
+        out.write(methods);
+        out.u2(0);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,315 @@
+package computil.generation.targets.jvm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the code of a single jvm method, keeps track of the stack depth and the locals it uses
+class CodeWriter {
+
+    static final int ACONST_NULL = 1;
+    static final int ICONST_0 = 3;
+    static final int FCONST_0 = 11;
+    static final int BIPUSH = 16;
+    static final int SIPUSH = 17;
+    static final int LDC = 18;
+    static final int LDC_W = 19;
+    static final int ILOAD = 21;
+    static final int FLOAD = 23;
+    static final int ALOAD = 25;
+    static final int AALOAD = 50;
+    static final int ISTORE = 54;
+    static final int FSTORE = 56;
+    static final int ASTORE = 58;
+    static final int AASTORE = 83;
+    static final int POP = 87;
+    static final int DUP = 89;
+    static final int SWAP = 95;
+    static final int IADD = 96;
+    static final int FADD = 98;
+    static final int ISUB = 100;
+    static final int FSUB = 102;
+    static final int IMUL = 104;
+    static final int FMUL = 106;
+    static final int FDIV = 110;
+    static final int INEG = 116;
+    static final int FNEG = 118;
+    static final int ISHL = 120;
+    static final int ISHR = 122;
+    static final int IAND = 126;
+    static final int IOR = 128;
+    static final int IXOR = 130;
+    static final int IINC = 132;
+    static final int I2F = 134;
+    static final int F2I = 139;
+    static final int FCMPL = 149;
+    static final int FCMPG = 150;
+    static final int IFEQ = 153;
+    static final int IFNE = 154;
+    static final int IF_ICMPEQ = 159;
+    static final int IF_ACMPNE = 166;
+    static final int GOTO = 167;
+    static final int IRETURN = 172;
+    static final int FRETURN = 174;
+    static final int ARETURN = 176;
+    static final int RETURN = 177;
+    static final int GETSTATIC = 178;
+    static final int PUTSTATIC = 179;
+    static final int INVOKEVIRTUAL = 182;
+    static final int INVOKESPECIAL = 183;
+    static final int INVOKESTATIC = 184;
+    static final int INVOKEINTERFACE = 185;
+    static final int NEW = 187;
+    static final int ANEWARRAY = 189;
+    static final int ATHROW = 191;
+    static final int CHECKCAST = 192;
+    static final int WIDE = 196;
+
+    // offsets of the conditions of IFEQ and IF_ICMPEQ, a condition and its negation differ in the lowest bit
+    static final int EQ = 0, NE = 1, LT = 2, GE = 3, GT = 4, LE = 5;
+
+    static class Label {
+        private int position = -1;
+        // the depth the stack has at the label, -1 while no jump to it is known
+        private int depth = -1;
+        // positions of jumps, which are patched once the label is placed
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    private final ClassFileWriter classFile;
+
+    private final Bytes code = new Bytes();
+
+    private int depth = 0;
+
+    private int maxStack = 0;
+
+    private int maxLocals;
+
+    CodeWriter(ClassFileWriter classFile, int parameters) {
+        this.classFile = classFile;
+        this.maxLocals = parameters;
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    int length(){
+        return code.size();
+    }
+
+    byte[] toByteArray(){
+        return code.toByteArray();
+    }
+
+    private void stack(int delta){
+        depth += delta;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    void insn(int opcode, int delta){
+        code.u1(opcode);
+        stack(delta);
+    }
+
+    void pushInt(int value){
+        if (value >= -1 && value <= 5)
+            insn(ICONST_0 + value, 1);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+            insn(BIPUSH, 1);
+            code.u1(value);
+        }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+            insn(SIPUSH, 1);
+            code.u2(value);
+        }
+        else ldc(classFile.integer(value));
+    }
+
+    void pushFloat(float value){
+        if (Float.floatToRawIntBits(value) == 0)
+            insn(FCONST_0, 1);
+        else ldc(classFile.floatConstant(value));
+    }
+
+    void pushString(String value){
+        ldc(classFile.string(value));
+    }
+
+    void pushClass(String internalName){
+        ldc(classFile.classRef(internalName));
+    }
+
+    private void ldc(int index){
+        if (index <= 0xFF){
+            insn(LDC, 1);
+            code.u1(index);
+        }
+        else {
+            insn(LDC_W, 1);
+            code.u2(index);
+        }
+    }
+
+    void load(JvmType type, int slot){
+        local(switch (type){
+            case INT -> ILOAD;
+            case FLOAT -> FLOAD;
+            default -> ALOAD;
+        }, slot, 1);
+    }
+
+    void store(JvmType type, int slot){
+        local(switch (type){
+            case INT -> ISTORE;
+            case FLOAT -> FSTORE;
+            default -> ASTORE;
+        }, slot, -1);
+    }
+
+    private void local(int opcode, int slot, int delta){
+        maxLocals = Math.max(maxLocals, slot + 1);
+        if (slot <= 0xFF){
+            insn(opcode, delta);
+            code.u1(slot);
+        }
+        else {
+            code.u1(WIDE);
+            insn(opcode, delta);
+            code.u2(slot);
+        }
+    }
+
+    void iinc(int slot, int delta){
+        maxLocals = Math.max(maxLocals, slot + 1);
+        if (slot <= 0xFF && delta >= Byte.MIN_VALUE && delta <= Byte.MAX_VALUE){
+            insn(IINC, 0);
+            code.u1(slot);
+            code.u1(delta);
+        }
+        else {
+            code.u1(WIDE);
+            insn(IINC, 0);
+            code.u2(slot);
+            code.u2(delta);
+        }
+    }
+
+    void defaultValue(JvmType type){
+        switch (type){
+            case INT -> pushInt(0);
+            case FLOAT -> pushFloat(0);
+            default -> insn(ACONST_NULL, 1);
+        }
+    }
+
+    void returnValue(JvmType type){
+        insn(switch (type){
+            case INT -> IRETURN;
+            case FLOAT -> FRETURN;
+            default -> ARETURN;
+        }, -1);
+    }
+
+    // the value on top, of the type from, as one of the type to
+    void convert(JvmType from, JvmType to){
+        from = from.orObject();
+        to = to.orObject();
+        if (from == to) return;
+        switch (from){
+            case INT -> {
+                if (to == JvmType.FLOAT) insn(I2F, 0);
+                else invoke(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+            }
+            case FLOAT -> {
+                // an int which is a float keeps its bits, as in the interpreter
+                if (to == JvmType.INT) invoke(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I");
+                else invoke(INVOKESTATIC, "java/lang/Float", "valueOf", "(F)Ljava/lang/Float;");
+            }
+            default -> {
+                if (to == JvmType.INT) invoke(INVOKESTATIC, JvmSupport.NAME, "toInt", "(Ljava/lang/Object;)I");
+                else invoke(INVOKESTATIC, JvmSupport.NAME, "toFloat", "(Ljava/lang/Object;)F");
+            }
+        }
+    }
+
+    void type(int opcode, String internalName){
+        insn(opcode, opcode == NEW ? 1 : 0);
+        code.u2(classFile.classRef(internalName));
+    }
+
+    void field(int opcode, String owner, String name, String descriptor){
+        insn(opcode, opcode == GETSTATIC ? 1 : -1);
+        code.u2(classFile.fieldRef(owner, name, descriptor));
+    }
+
+    void invoke(int opcode, String owner, String name, String descriptor){
+        int delta = returnSize(descriptor) - argumentSize(descriptor) - (opcode == INVOKESTATIC ? 0 : 1);
+        if (opcode == INVOKEINTERFACE){
+            insn(opcode, delta);
+            code.u2(classFile.interfaceMethodRef(owner, name, descriptor));
+            code.u1(argumentSize(descriptor) + 1);
+            code.u1(0);
+        }
+        else {
+            insn(opcode, delta);
+            code.u2(classFile.methodRef(owner, name, descriptor));
+        }
+    }
+
+    // descriptors in this target have no long and double, every value takes one slot
+    private static int argumentSize(String descriptor){
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')'){
+            while (descriptor.charAt(i) == '[') i++;
+            if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+            i++;
+            size++;
+        }
+        return size;
+    }
+
+    private static int returnSize(String descriptor){
+        return descriptor.endsWith(")V") ? 0 : 1;
+    }
+
+    // a conditional jump pops its operands, IFEQ + condition pops one and IF_ICMPEQ + condition two
+    void jump(int opcode, Label label){
+        int delta = opcode == GOTO ? 0 : opcode >= IF_ICMPEQ ? -2 : -1;
+        int position = code.size();
+        insn(opcode, delta);
+        label.depth = depth;
+        if (label.position >= 0)
+            code.u2(offset(position, label.position));
+        else {
+            label.jumps.add(position);
+            code.u2(0);
+        }
+    }
+
+    void place(Label label){
+        label.position = code.size();
+        if (label.depth >= 0)
+            depth = label.depth;
+        for (int jump : label.jumps)
+            code.putU2(jump + 1, offset(jump, label.position));
+        label.jumps.clear();
+    }
+
+    // code behind a jump or throw is only entered through labels, which bring the depth it starts with
+    void setDepth(int depth){
+        this.depth = depth;
+    }
+
+    private static int offset(int from, int to){
+        int offset = to - from;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+            throw new IllegalStateException("jump over " + offset + " bytes does not fit into a jvm branch");
+        return offset;
+    }
+}
@@ -0,0 +1,651 @@
+package computil.generation.targets.jvm;
+
+import computil.generation.BasicBlock;
+import computil.generation.Function;
+import computil.generation.instructions.*;
+import computil.generation.pool.PoolConstant;
+import computil.generation.pool.PoolTag;
+import computil.tree.Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static computil.generation.targets.jvm.CodeWriter.*;
+
+/*
+ * Translates a function into the code of a static jvm method. The operand stack of the function becomes
+ * the jvm stack, with the static type of every value tracked along, and its locals follow the parameters
+ * of the method. When inferring, the types values are stored, passed and returned with widen the
+ * signatures instead, and the code is thrown away.
+ */
+class FunctionTranslator implements InstructionVisitor {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String SLOTS = "computil/runtime/Slots";
+    private static final String INSTANCE = "computil/runtime/Instance";
+    private static final String ARRAY = "computil/runtime/ArrayObject";
+    private static final String NATIVE_FUNCTION = "computil/runtime/NativeFunction";
+
+    private final JvmBytecode target;
+
+    private final Function function;
+
+    private final Signature signature;
+
+    private final boolean inferring;
+
+    private final CodeWriter code;
+
+    private final List<JvmType> stack = new ArrayList<>();
+
+    private final Map<BasicBlock, Label> labels = new HashMap<>();
+
+    // the first jvm local of the function's locals, and the first one free for temporaries
+    private final int base;
+    private final int temps;
+
+    private BasicBlock block;
+
+    private int line = -1;
+
+    FunctionTranslator(JvmBytecode target, ClassFileWriter classFile, Function function, boolean inferring) {
+        this.target = target;
+        this.function = function;
+        this.signature = target.signature(function);
+        this.inferring = inferring;
+        this.base = signature.parameters.length;
+        this.temps = base + signature.locals.length;
+        this.code = new CodeWriter(classFile, temps);
+    }
+
+    CodeWriter translate(){
+        // the arguments are where the function expects them, on its stack
+        for (int i = 0; i < base; i++){
+            code.load(signature.parameters[i], i);
+            stack.add(signature.parameters[i]);
+        }
+        // the verifier does not know that locals are stored before they are loaded
+        for (int i = 0; i < signature.locals.length; i++){
+            code.defaultValue(signature.locals[i]);
+            code.store(signature.locals[i], base + i);
+        }
+
+        List<BasicBlock> blocks = function.getBlocks();
+        for (int i = 0; i < blocks.size(); i++){
+            block = blocks.get(i);
+            if (i > 0){
+                code.setDepth(0);
+                stack.clear();
+            }
+            code.place(label(block));
+            for (Instruction instruction : block)
+                instruction.accept(this);
+
+            BasicBlock fallThrough = block.getFallThrough();
+            if (fallThrough != null){
+                requireEmptyStack();
+                if (i + 1 == blocks.size() || blocks.get(i + 1) != fallThrough)
+                    code.jump(GOTO, label(fallThrough));
+            }
+        }
+        return code;
+    }
+
+    private Label label(BasicBlock block){
+        return labels.computeIfAbsent(block, b -> new Label());
+    }
+
+    private void requireEmptyStack(){
+        if (!stack.isEmpty())
+            throw new UnsupportedOperationException("values on the stack across blocks of " + function.getName());
+    }
+
+    private void push(JvmType type){
+        stack.add(type);
+    }
+
+    private JvmType pop(){
+        return stack.remove(stack.size() - 1);
+    }
+
+    private JvmType peek(int depth){
+        return stack.get(stack.size() - 1 - depth);
+    }
+
+    // converts the values on top to the wanted types, the last one being the topmost
+    private void coerce(JvmType... wanted){
+        int count = wanted.length;
+        int first = -1;
+        for (int i = 0; i < count && first < 0; i++)
+            if (peek(count - 1 - i).orObject() != wanted[i].orObject())
+                first = i;
+        if (first < 0) return;
+
+        // values above the first that has to be converted are parked in temporaries meanwhile
+        JvmType[] parked = new JvmType[count - first - 1];
+        for (int i = parked.length - 1; i >= 0; i--){
+            parked[i] = pop();
+            code.store(parked[i], temps + i);
+        }
+        code.convert(pop(), wanted[first]);
+        push(wanted[first]);
+        for (int i = 0; i < parked.length; i++){
+            code.load(parked[i], temps + i);
+            code.convert(parked[i], wanted[first + 1 + i]);
+            push(wanted[first + 1 + i]);
+        }
+    }
+
+    private JvmType[] objects(int count){
+        JvmType[] types = new JvmType[count];
+        Arrays.fill(types, JvmType.OBJECT);
+        return types;
+    }
+
+    // the name of the function and the current line, for the errors of a helper
+    private void pushLocation(){
+        code.pushString(function.getName());
+        code.pushInt(line);
+    }
+
+    private void throwError(String message){
+        code.pushString(message);
+        pushLocation();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "error",
+                "(Ljava/lang/String;Ljava/lang/String;I)Lcomputil/runtime/RabbitException;");
+        code.insn(ATHROW, -1);
+    }
+
+    private void pushStruct(int index){
+        code.field(GETSTATIC, target.getClassName(), JvmBytecode.STRUCTS, JvmBytecode.STRUCTS_DESCRIPTOR);
+        code.pushInt(index);
+        code.insn(AALOAD, -1);
+    }
+
+    private String constantName(int address){
+        return (String) target.getPool().get(address).get();
+    }
+
+    private void loadLocal(int address){
+        JvmType type = signature.locals[address];
+        code.load(type, base + address);
+        push(type);
+    }
+
+    // the object on top as an instance whose field is accessed
+    private void checkInstance(){
+        pushLocation();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "instance",
+                "(Ljava/lang/Object;Ljava/lang/String;I)Lcomputil/runtime/Instance;");
+    }
+
+    private void checkArray(){
+        pushLocation();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "array",
+                "(Ljava/lang/Object;Ljava/lang/String;I)Lcomputil/runtime/ArrayObject;");
+    }
+
+    private void getSlot(int index){
+        coerce(JvmType.OBJECT);
+        pop();
+        checkInstance();
+        code.pushInt(index);
+        code.invoke(INVOKEVIRTUAL, SLOTS, "get", "(I)Ljava/lang/Object;");
+        push(JvmType.OBJECT);
+    }
+
+    // the value below the instance or array on top, which the check on top has been emitted for
+    private void setSlot(int index){
+        code.insn(SWAP, 0);
+        code.pushInt(index);
+        code.insn(SWAP, 0);
+        code.invoke(INVOKEVIRTUAL, SLOTS, "set", "(ILjava/lang/Object;)V");
+    }
+
+    // replaces the values on top by an Object[] of them, the topmost first, as natives take their arguments
+    private void arguments(int count){
+        coerce(objects(count));
+        code.pushInt(count);
+        code.type(ANEWARRAY, OBJECT);
+        code.store(JvmType.OBJECT, temps);
+        for (int i = 0; i < count; i++){
+            code.load(JvmType.OBJECT, temps);
+            code.insn(SWAP, 0);
+            code.pushInt(i);
+            code.insn(SWAP, 0);
+            code.insn(AASTORE, -3);
+            pop();
+        }
+        code.load(JvmType.OBJECT, temps);
+    }
+
+    private static int condition(Operation comparison){
+        return switch (comparison){
+            case EQUALS -> EQ;
+            case NOT_EQUALS -> NE;
+            case LESS -> LT;
+            case GREATER_EQ -> GE;
+            case GREATER -> GT;
+            case LESS_EQ -> LE;
+            default -> throw new IllegalArgumentException(comparison + " is no comparison");
+        };
+    }
+
+    // pops the two values on top and jumps if their comparison is the expected result
+    private void compareJump(Operation comparison, boolean expected, Label label){
+        int condition = condition(comparison) ^ (expected ? 0 : 1);
+        JvmType right = peek(0);
+        JvmType left = peek(1);
+        if (left == JvmType.INT && right == JvmType.INT){
+            pop();
+            pop();
+            code.jump(IF_ICMPEQ + condition, label);
+            return;
+        }
+        // a comparison with NaN is false unless it is !=, so NaN orders after for < and <=, before otherwise
+        int unordered = comparison == Operation.LESS || comparison == Operation.LESS_EQ ? 1 : -1;
+        if (left.isNumber() && right.isNumber()){
+            coerce(JvmType.FLOAT, JvmType.FLOAT);
+            code.insn(unordered > 0 ? FCMPG : FCMPL, -1);
+        }
+        else {
+            coerce(JvmType.OBJECT, JvmType.OBJECT);
+            code.pushInt(unordered);
+            code.invoke(INVOKESTATIC, JvmSupport.NAME, "compare", "(Ljava/lang/Object;Ljava/lang/Object;I)I");
+        }
+        pop();
+        pop();
+        code.jump(IFEQ + condition, label);
+    }
+
+    // pushes 1 if the jump is taken, 0 otherwise
+    private void jumpToValue(Consumer<Label> jump){
+        Label taken = new Label();
+        Label end = new Label();
+        jump.accept(taken);
+        code.pushInt(0);
+        code.jump(GOTO, end);
+        code.place(taken);
+        code.pushInt(1);
+        code.place(end);
+        push(JvmType.INT);
+    }
+
+    private void intOperation(int opcode){
+        coerce(JvmType.INT, JvmType.INT);
+        pop();
+        pop();
+        code.insn(opcode, -1);
+        push(JvmType.INT);
+    }
+
+    private void floatOperation(int opcode){
+        coerce(JvmType.FLOAT, JvmType.FLOAT);
+        pop();
+        pop();
+        code.insn(opcode, -1);
+        push(JvmType.FLOAT);
+    }
+
+    private void intHelper(String name){
+        coerce(JvmType.INT, JvmType.INT);
+        pop();
+        pop();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, name, "(II)I");
+        push(JvmType.INT);
+    }
+
+
+    @Override
+    public void visitPushNull(PushNull pushNull) {
+        code.insn(ACONST_NULL, 1);
+        push(JvmType.OBJECT);
+    }
+
+    @Override
+    public void visitPushInt(PushInt pushInt) {
+        code.pushInt(pushInt.getValue());
+        push(JvmType.INT);
+    }
+
+    @Override
+    public void visitPushBool(PushBool pushBool) {
+        code.pushInt(pushBool.getValue() ? 1 : 0);
+        push(JvmType.INT);
+    }
+
+    @Override
+    public void visitLoadConst(LoadConst loadConst) {
+        PoolConstant<?> constant = target.getPool().get(loadConst.getAddress());
+        if (constant.getTag() == PoolTag.INTEGER){
+            code.pushInt((Integer) constant.get());
+            push(JvmType.INT);
+        }
+        else if (constant.getTag() == PoolTag.FLOAT){
+            code.pushFloat((Float) constant.get());
+            push(JvmType.FLOAT);
+        }
+        else {
+            code.pushString(String.valueOf(constant.get()));
+            push(JvmType.OBJECT);
+        }
+    }
+
+    @Override
+    public void visitLoadLocal(LoadLocal loadLocal) {
+        loadLocal(loadLocal.getAddress());
+    }
+
+    @Override
+    public void visitStoreLocal(StoreLocal storeLocal) {
+        int address = storeLocal.getAddress();
+        if (inferring) signature.local(address, peek(0));
+        JvmType type = signature.locals[address];
+        coerce(type);
+        pop();
+        code.store(type, base + address);
+    }
+
+    @Override
+    public void visitNullCheck(NullCheck nullCheck) {
+        if (peek(0).isNumber()) return;
+        pushLocation();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "nullCheck", "(Ljava/lang/Object;Ljava/lang/String;I)Ljava/lang/Object;");
+    }
+
+    @Override
+    public void visitCheckCast(CheckCast checkCast) {
+        // templates have no runtime type, only casts to structs are checked
+        int struct = target.structIndex(constantName(checkCast.getAddress()));
+        if (struct < 0) return;
+        coerce(JvmType.OBJECT);
+        pushStruct(struct);
+        pushLocation();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "checkCast",
+                "(Ljava/lang/Object;Lcomputil/runtime/StructType;Ljava/lang/String;I)Ljava/lang/Object;");
+    }
+
+    @Override
+    public void visitInt2Float(Int2Float int2Float) {
+        coerce(JvmType.INT);
+        pop();
+        code.insn(I2F, 0);
+        push(JvmType.FLOAT);
+    }
+
+    @Override
+    public void visitFloat2Int(Float2Int float2Int) {
+        coerce(JvmType.FLOAT);
+        pop();
+        code.insn(F2I, 0);
+        push(JvmType.INT);
+    }
+
+    @Override
+    public void visitMakeArray(MakeArray makeArray) {
+        int size = makeArray.getSize();
+        coerce(objects(size));
+        // the first element is the deepest
+        for (int i = size - 1; i >= 0; i--){
+            pop();
+            code.store(JvmType.OBJECT, temps + i);
+        }
+        code.type(NEW, ARRAY);
+        code.insn(DUP, 1);
+        code.pushInt(size);
+        code.invoke(INVOKESPECIAL, ARRAY, "<init>", "(I)V");
+        for (int i = 0; i < size; i++){
+            code.insn(DUP, 1);
+            code.pushInt(i);
+            code.load(JvmType.OBJECT, temps + i);
+            code.invoke(INVOKEVIRTUAL, SLOTS, "set", "(ILjava/lang/Object;)V");
+        }
+        push(JvmType.OBJECT);
+    }
+
+    @Override
+    public void visitReadArray(ReadArray readArray) {
+        coerce(JvmType.OBJECT);
+        pop();
+        checkArray();
+        code.pushInt(readArray.getAddress());
+        code.invoke(INVOKEVIRTUAL, SLOTS, "get", "(I)Ljava/lang/Object;");
+        push(JvmType.OBJECT);
+    }
+
+    @Override
+    public void visitWriteArray(WriteArray writeArray) {
+        coerce(JvmType.OBJECT, JvmType.OBJECT);
+        pop();
+        pop();
+        checkArray();
+        setSlot(writeArray.getAddress());
+    }
+
+    @Override
+    public void visitNewInstance(NewInstance newInstance) {
+        String name = constantName(newInstance.getAddress());
+        int struct = target.structIndex(name);
+        if (struct < 0){
+            throwError("no struct " + name);
+            code.insn(ACONST_NULL, 1);
+        }
+        else {
+            code.type(NEW, INSTANCE);
+            code.insn(DUP, 1);
+            pushStruct(struct);
+            code.invoke(INVOKESPECIAL, INSTANCE, "<init>", "(Lcomputil/runtime/StructType;)V");
+        }
+        push(JvmType.OBJECT);
+    }
+
+    @Override
+    public void visitFree(Free free) {
+        pop();
+        code.insn(POP, -1);
+    }
+
+    @Override
+    public void visitGetField(GetField getField) {
+        getSlot(getField.getAddress());
+    }
+
+    @Override
+    public void visitPutField(PutField putField) {
+        coerce(JvmType.OBJECT, JvmType.OBJECT);
+        pop();
+        pop();
+        checkInstance();
+        setSlot(putField.getAddress());
+    }
+
+    @Override
+    public void visitInvokeVirtual(InvokeVirtual invokeVirtual) {
+        Function callee = target.function(constantName(invokeVirtual.getAddress()));
+        Signature calleeSignature = target.signature(callee);
+        int argc = invokeVirtual.getArguments();
+        if (argc != calleeSignature.parameters.length)
+            throw new IllegalStateException(function.getName() + " calls " + callee.getName() + " with " + argc + " arguments");
+        if (inferring)
+            for (int i = 0; i < argc; i++)
+                calleeSignature.parameter(i, peek(argc - 1 - i));
+
+        coerce(calleeSignature.parameters);
+        for (int i = 0; i < argc; i++)
+            pop();
+        code.invoke(INVOKESTATIC, target.getClassName(), target.methodName(callee), calleeSignature.descriptor());
+        push(calleeSignature.result);
+    }
+
+    @Override
+    public void visitInvokeTemplate(InvokeTemplate invokeTemplate) {
+        // the arguments, the receiver being the first, and the receiver again to look up the method in
+        int argc = invokeTemplate.getArguments();
+        coerce(objects(argc + 1));
+        for (int i = 0; i <= argc; i++)
+            pop();
+        pushLocation();
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "type",
+                "(Ljava/lang/Object;Ljava/lang/String;I)Lcomputil/runtime/StructType;");
+        String dispatcher = target.dispatcher(constantName(invokeTemplate.getAddress()), argc);
+        code.invoke(INVOKESTATIC, target.getClassName(), dispatcher, JvmBytecode.dispatcherDescriptor(argc));
+        push(JvmType.OBJECT);
+    }
+
+    @Override
+    public void visitInvokeNative(InvokeNative invokeNative) {
+        int address = invokeNative.getAddress();
+        arguments(invokeNative.getArguments());
+        target.pushNative(code, address, function.getName(), line);
+        code.insn(SWAP, 0);
+        code.invoke(INVOKEINTERFACE, NATIVE_FUNCTION, "invoke", "([Ljava/lang/Object;)Ljava/lang/Object;");
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "result", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        push(JvmType.OBJECT);
+    }
+
+    @Override
+    public void visitReturn(Return aReturn) {
+        if (inferring) signature.result(peek(0));
+        coerce(signature.result);
+        code.returnValue(pop());
+        stack.clear();
+    }
+
+    @Override
+    public void visitDup(Dup dup) {
+        code.insn(DUP, 1);
+        push(peek(0));
+    }
+
+    @Override
+    public void visitSwap(Swap swap) {
+        code.insn(SWAP, 0);
+        JvmType top = pop();
+        JvmType below = pop();
+        push(top);
+        push(below);
+    }
+
+    @Override
+    public void visitPop(Pop pop) {
+        pop();
+        code.insn(POP, -1);
+    }
+
+    @Override
+    public void visitNot(Not not) {
+        coerce(JvmType.INT);
+        pop();
+        jumpToValue(taken -> code.jump(IFEQ, taken));
+    }
+
+    @Override
+    public void visitNegate(Negate negate) {
+        switch (peek(0)){
+            case INT -> code.insn(INEG, 0);
+            case FLOAT -> code.insn(FNEG, 0);
+            default -> {
+                coerce(JvmType.OBJECT);
+                code.invoke(INVOKESTATIC, JvmSupport.NAME, "negate", "(Ljava/lang/Object;)Ljava/lang/Object;");
+            }
+        }
+    }
+
+    @Override
+    public void visitBinaryOperation(BinaryOperation binaryOperation) {
+        Operation operation = binaryOperation.getOperation();
+        boolean isInt = binaryOperation.getType().equals("int");
+        switch (operation){
+            case ADD -> { if (isInt) intOperation(IADD); else floatOperation(FADD); }
+            case SUB -> { if (isInt) intOperation(ISUB); else floatOperation(FSUB); }
+            case MUL -> { if (isInt) intOperation(IMUL); else floatOperation(FMUL); }
+            case DIV -> floatOperation(FDIV);
+            case AND_BIT -> intOperation(IAND);
+            case OR_BIT -> intOperation(IOR);
+            case XOR -> intOperation(IXOR);
+            case SHIFT_AL -> intOperation(ISHL);
+            case SHIFT_AR -> intOperation(ISHR);
+            case AND -> intHelper("and");
+            case OR -> intHelper("or");
+            case MOD -> {
+                coerce(JvmType.INT, JvmType.INT);
+                pop();
+                pop();
+                pushLocation();
+                code.invoke(INVOKESTATIC, JvmSupport.NAME, "mod", "(IILjava/lang/String;I)I");
+                push(JvmType.INT);
+            }
+            case EQUALS, NOT_EQUALS, LESS, GREATER, LESS_EQ, GREATER_EQ ->
+                    jumpToValue(taken -> compareJump(operation, true, taken));
+            default -> throw new UnsupportedOperationException(binaryOperation.getType() + " " + operation);
+        }
+    }
+
+    @Override
+    public void visitGoto(Goto aGoto) {
+        requireEmptyStack();
+        code.jump(GOTO, label(block.getJumpTarget()));
+    }
+
+    @Override
+    public void visitBranchIfFalse(BranchIfFalse branchIfFalse) {
+        coerce(JvmType.INT);
+        pop();
+        requireEmptyStack();
+        code.jump(IFEQ, label(block.getJumpTarget()));
+    }
+
+    @Override
+    public void visitBranchIfTrue(BranchIfTrue branchIfTrue) {
+        coerce(JvmType.INT);
+        pop();
+        requireEmptyStack();
+        code.jump(IFNE, label(block.getJumpTarget()));
+    }
+
+    @Override
+    public void visitNewLineNumber(NewLineNumber newLineNumber) {
+        line = newLineNumber.getLine();
+    }
+
+    @Override
+    public void visitLoad2AddInt(Load2AddInt load2AddInt) {
+        loadLocal(load2AddInt.getFirst());
+        coerce(JvmType.INT);
+        loadLocal(load2AddInt.getSecond());
+        intOperation(IADD);
+    }
+
+    @Override
+    public void visitLoadGetField(LoadGetField loadGetField) {
+        loadLocal(loadGetField.getLocal());
+        getSlot(loadGetField.getField());
+    }
+
+    @Override
+    public void visitCompareBranch(CompareBranch compareBranch) {
+        compareJump(compareBranch.getComparison(), compareBranch.isJumpIfTrue(), label(block.getJumpTarget()));
+        requireEmptyStack();
+    }
+
+    @Override
+    public void visitIncLocal(IncLocal incLocal) {
+        int address = incLocal.getAddress();
+        if (inferring) signature.local(address, JvmType.INT);
+        JvmType type = signature.locals[address];
+        if (type == JvmType.INT){
+            code.iinc(base + address, incLocal.getDelta());
+            return;
+        }
+        code.load(type, base + address);
+        code.convert(type, JvmType.INT);
+        code.pushInt(incLocal.getDelta());
+        code.insn(IADD, -1);
+        code.convert(JvmType.INT, type);
+        code.store(type, base + address);
+    }
+}
@@ -0,0 +1,310 @@
+package computil.generation.targets.jvm;
+
+import computil.generation.Function;
+import computil.generation.IRUnit;
+import computil.generation.Struct;
+import computil.generation.Target;
+import computil.generation.pool.Pool;
+import computil.generation.pool.PoolConstant;
+import computil.generation.pool.PoolTag;
+import computil.runtime.NativeFunction;
+import computil.runtime.Natives;
+import computil.runtime.RabbitException;
+import computil.runtime.StructType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+import static computil.generation.targets.jvm.CodeWriter.*;
+
+/*
+ * Compiles the functions of a unit into static methods of a hidden class, which the jvm then optimizes
+ * like any other code. The types of parameters, locals and results are inferred over all functions:
+ * a value that is an int or float wherever it comes from stays unboxed, everything else is boxed as
+ * natives see it. Natives are bound from the registry when the class is defined. Calls of templates go
+ * through a dispatcher per method name, which compares the receiver's type with every struct that
+ * implements the method.
+ */
+public class JvmBytecode implements Target {
+
+    static final String STRUCTS = "STRUCTS";
+    static final String STRUCTS_DESCRIPTOR = "[Lcomputil/runtime/StructType;";
+
+    private static final String NATIVES = "NATIVES";
+    private static final String NATIVES_DESCRIPTOR = "[Lcomputil/runtime/NativeFunction;";
+
+    private static final String CLASS_NAME = "computil/generation/targets/jvm/RabbitProgram";
+
+    private static final int ACC_PRIVATE_STATIC_FINAL =
+            ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL;
+
+    private final Natives natives;
+
+    private Pool pool;
+
+    private final Map<String, Function> functions = new HashMap<>();
+
+    private final Map<Function, Signature> signatures = new HashMap<>();
+
+    private final Map<Function, String> methodNames = new HashMap<>();
+
+    private final Set<String> usedNames = new HashSet<>();
+
+    private final List<Struct> structs = new ArrayList<>();
+
+    private final Map<String, Integer> structIndices = new HashMap<>();
+
+    private final Map<Dispatcher, String> dispatchers = new LinkedHashMap<>();
+
+    private MethodHandle entryPoint;
+
+    private String entryName;
+
+    private int codeSize = 0;
+
+    public JvmBytecode(Natives natives) {
+        this.natives = Objects.requireNonNull(natives);
+    }
+
+    @Override
+    public void write(IRUnit unit) {
+        pool = unit.getPool();
+        for (Function function : unit.getFunctions()){
+            functions.put(function.getName(), function);
+            signatures.put(function, new Signature(function.getParameters().size(), function.getLocals()));
+            methodNames.put(function, uniqueName(function.getName()));
+        }
+        for (Struct struct : unit.getStructs()){
+            structIndices.put(struct.getName(), structs.size());
+            structs.add(struct);
+        }
+        inferTypes();
+
+        ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME);
+        classFile.field(ACC_PRIVATE_STATIC_FINAL, NATIVES, NATIVES_DESCRIPTOR);
+        classFile.field(ACC_PRIVATE_STATIC_FINAL, STRUCTS, STRUCTS_DESCRIPTOR);
+        for (Function function : unit.getFunctions()){
+            CodeWriter code = new FunctionTranslator(this, classFile, function, false).translate();
+            classFile.method(ClassFileWriter.ACC_STATIC, methodName(function), signature(function).descriptor(), code);
+            codeSize += code.length();
+        }
+        // dispatchers are only known once the functions calling them are translated
+        for (Map.Entry<Dispatcher, String> dispatcher : dispatchers.entrySet()){
+            Dispatcher key = dispatcher.getKey();
+            CodeWriter code = dispatch(classFile, key.name(), key.argc());
+            classFile.method(ClassFileWriter.ACC_STATIC, dispatcher.getValue(), dispatcherDescriptor(key.argc()), code);
+        }
+        classFile.method(ClassFileWriter.ACC_STATIC, "<clinit>", "()V", initializer(classFile));
+
+        define(classFile.toByteArray(), unit);
+    }
+
+    // widens the signatures until translating every function leaves them as they are
+    private void inferTypes(){
+        // the dispatchers of templates only pass objects
+        for (Struct struct : structs)
+            for (int address : struct.getMethods().values())
+                if (pool.get(address).getTag() == PoolTag.VIRTUAL_FUNCTION){
+                    Signature signature = signature(function((String) pool.get(address).get()));
+                    for (int i = 0; i < signature.parameters.length; i++)
+                        signature.parameter(i, JvmType.OBJECT);
+                }
+
+        ClassFileWriter scratch = new ClassFileWriter(CLASS_NAME);
+        boolean changed = true;
+        while (changed){
+            for (Signature signature : signatures.values())
+                signature.changed = false;
+            for (Function function : functions.values())
+                new FunctionTranslator(this, scratch, function, true).translate();
+            changed = false;
+            for (Signature signature : signatures.values())
+                changed |= signature.changed;
+        }
+        for (Signature signature : signatures.values())
+            signature.complete();
+    }
+
+    private String uniqueName(String name){
+        // names of jvm methods cannot contain these
+        String base = name.replaceAll("[.;\\[/<>]", "_");
+        String unique = base;
+        for (int i = 1; !usedNames.add(unique); i++)
+            unique = base + "_" + i;
+        return unique;
+    }
+
+    // compares the type of the receiver with every struct implementing the method
+    private CodeWriter dispatch(ClassFileWriter classFile, String name, int argc){
+        CodeWriter code = new CodeWriter(classFile, argc + 1);
+        for (Struct struct : structs){
+            Integer address = struct.getMethods().get(name);
+            if (address == null) continue;
+            PoolConstant<?> constant = pool.get(address);
+            Label next = new Label();
+            code.load(JvmType.OBJECT, argc);
+            code.field(GETSTATIC, CLASS_NAME, STRUCTS, STRUCTS_DESCRIPTOR);
+            code.pushInt(structIndices.get(struct.getName()));
+            code.insn(AALOAD, -1);
+            code.jump(IF_ACMPNE, next);
+
+            if (constant.getTag() == PoolTag.NATIVE_FUNCTION){
+                pushNative(code, address, name, -1);
+                code.pushInt(argc);
+                code.type(ANEWARRAY, "java/lang/Object");
+                // the first argument is the last parameter
+                for (int i = 0; i < argc; i++){
+                    code.insn(DUP, 1);
+                    code.pushInt(i);
+                    code.load(JvmType.OBJECT, argc - 1 - i);
+                    code.insn(AASTORE, -3);
+                }
+                code.invoke(INVOKEINTERFACE, "computil/runtime/NativeFunction", "invoke", "([Ljava/lang/Object;)Ljava/lang/Object;");
+                code.invoke(INVOKESTATIC, JvmSupport.NAME, "result", "(Ljava/lang/Object;)Ljava/lang/Object;");
+                code.returnValue(JvmType.OBJECT);
+            }
+            else {
+                Function method = function((String) constant.get());
+                Signature signature = signature(method);
+                if (signature.parameters.length == argc){
+                    for (int i = 0; i < argc; i++){
+                        code.load(JvmType.OBJECT, i);
+                        code.convert(JvmType.OBJECT, signature.parameters[i]);
+                    }
+                    code.invoke(INVOKESTATIC, CLASS_NAME, methodName(method), signature.descriptor());
+                    code.convert(signature.result, JvmType.OBJECT);
+                    code.returnValue(JvmType.OBJECT);
+                }
+            }
+            code.place(next);
+        }
+        code.load(JvmType.OBJECT, argc);
+        code.pushString(name);
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "noMethod",
+                "(Lcomputil/runtime/StructType;Ljava/lang/String;)Lcomputil/runtime/RabbitException;");
+        code.insn(ATHROW, -1);
+        return code;
+    }
+
+    // takes the natives and struct types from the class data
+    private CodeWriter initializer(ClassFileWriter classFile){
+        CodeWriter code = new CodeWriter(classFile, 0);
+        code.invoke(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+        code.pushString("_");
+        code.pushClass("[Ljava/lang/Object;");
+        code.invoke(INVOKESTATIC, "java/lang/invoke/MethodHandles", "classData",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;");
+        code.type(CHECKCAST, "[Ljava/lang/Object;");
+        code.store(JvmType.OBJECT, 0);
+        code.load(JvmType.OBJECT, 0);
+        code.pushInt(0);
+        code.insn(AALOAD, -1);
+        code.type(CHECKCAST, NATIVES_DESCRIPTOR);
+        code.field(PUTSTATIC, CLASS_NAME, NATIVES, NATIVES_DESCRIPTOR);
+        code.load(JvmType.OBJECT, 0);
+        code.pushInt(1);
+        code.insn(AALOAD, -1);
+        code.type(CHECKCAST, STRUCTS_DESCRIPTOR);
+        code.field(PUTSTATIC, CLASS_NAME, STRUCTS, STRUCTS_DESCRIPTOR);
+        code.insn(RETURN, 0);
+        return code;
+    }
+
+    private void define(byte[] bytes, IRUnit unit){
+        NativeFunction[] resolved = new NativeFunction[pool.size()];
+        for (int i = 0; i < pool.size(); i++)
+            if (pool.get(i).getTag() == PoolTag.NATIVE_FUNCTION)
+                resolved[i] = natives.get((String) pool.get(i).get());
+        StructType[] types = new StructType[structs.size()];
+        for (int i = 0; i < types.length; i++){
+            Struct struct = structs.get(i);
+            types[i] = new StructType(struct.getName(), struct.getSize(), struct.getMethods());
+        }
+
+        Function main = function((String) pool.get(unit.getEntryPoint()).get());
+        Signature signature = signature(main);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, new Object[]{resolved, types}, true);
+            entryName = main.getName();
+            entryPoint = lookup.findStatic(lookup.lookupClass(), methodName(main),
+                    MethodType.fromMethodDescriptorString(signature.descriptor(), null));
+        } catch (IllegalAccessException | NoSuchMethodException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // runs the entry point, returns what it returns as natives get it, null for void
+    public Object run(){
+        if (entryPoint == null)
+            throw new IllegalStateException("nothing has been compiled yet");
+        try {
+            return JvmSupport.result(entryPoint.invoke());
+        } catch (StackOverflowError e){
+            throw new RabbitException("stack overflow", entryName, -1);
+        } catch (RuntimeException | Error e){
+            throw e;
+        } catch (Throwable e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the size of the jvm code of all functions, without dispatchers
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    String getClassName(){
+        return CLASS_NAME;
+    }
+
+    Pool getPool(){
+        return pool;
+    }
+
+    Function function(String name){
+        Function function = functions.get(name);
+        if (function == null)
+            throw new IllegalStateException("no function " + name);
+        return function;
+    }
+
+    Signature signature(Function function){
+        return signatures.get(function);
+    }
+
+    String methodName(Function function){
+        return methodNames.get(function);
+    }
+
+    // the index of the struct in STRUCTS, -1 if there is none of the name
+    int structIndex(String name){
+        return structIndices.getOrDefault(name, -1);
+    }
+
+    // the name of the method dispatching template calls of the method with argc arguments
+    String dispatcher(String name, int argc){
+        return dispatchers.computeIfAbsent(new Dispatcher(name, argc), key -> uniqueName("template$" + name + "$" + argc));
+    }
+
+    // the arguments as they lie on the stack, the receiver last, followed by the type of the receiver
+    static String dispatcherDescriptor(int argc){
+        return "(" + "Ljava/lang/Object;".repeat(argc) + "Lcomputil/runtime/StructType;)Ljava/lang/Object;";
+    }
+
+    // pushes the native function at the address, failing if the registry had none for its name
+    void pushNative(CodeWriter code, int address, String function, int line){
+        code.field(GETSTATIC, CLASS_NAME, NATIVES, NATIVES_DESCRIPTOR);
+        code.pushInt(address);
+        code.insn(AALOAD, -1);
+        code.pushString((String) pool.get(address).get());
+        code.pushString(function);
+        code.pushInt(line);
+        code.invoke(INVOKESTATIC, JvmSupport.NAME, "nativeFunction",
+                "(Lcomputil/runtime/NativeFunction;Ljava/lang/String;Ljava/lang/String;I)Lcomputil/runtime/NativeFunction;");
+    }
+
+    private record Dispatcher(String name, int argc) {}
+}
@@ -0,0 +1,110 @@
+package computil.generation.targets.jvm;
+
+import computil.runtime.ArrayObject;
+import computil.runtime.Instance;
+import computil.runtime.NativeFunction;
+import computil.runtime.RabbitException;
+import computil.runtime.StructType;
+
+import java.util.Objects;
+
+/*
+ * Called by the compiled code for what takes more than a few jvm instructions. Values whose type is not
+ * known statically are boxed as natives see them, see NativeFunction, and behave as in the Interpreter.
+ */
+final class JvmSupport {
+
+    static final String NAME = "computil/generation/targets/jvm/JvmSupport";
+
+    private JvmSupport() {}
+
+    static int toInt(Object value){
+        return switch (value){
+            case Integer i -> i;
+            case Boolean b -> b ? 1 : 0;
+            case Float f -> Float.floatToRawIntBits(f);
+            case null, default -> 0;
+        };
+    }
+
+    static float toFloat(Object value){
+        return value instanceof Float f ? f : toInt(value);
+    }
+
+    // bools returned by natives are ints to the program
+    static Object result(Object value){
+        return value instanceof Boolean b ? (Integer) (b ? 1 : 0) : value;
+    }
+
+    static Object negate(Object value){
+        return value instanceof Float f ? (Object) (-f) : (Object) (-toInt(value));
+    }
+
+    // compares as floats if either is one, as ints if both are, as references otherwise,
+    // unordered is the result if a float is NaN, as for fcmpl and fcmpg
+    static int compare(Object left, Object right, int unordered){
+        if (left instanceof Float || right instanceof Float){
+            float l = toFloat(left);
+            float r = toFloat(right);
+            return l < r ? -1 : l > r ? 1 : l == r ? 0 : unordered;
+        }
+        if (left instanceof Integer l && right instanceof Integer r)
+            return Integer.compare(l, r);
+        return Objects.equals(left, right) ? 0 : 1;
+    }
+
+    static int and(int left, int right){
+        return left != 0 && right != 0 ? 1 : 0;
+    }
+
+    static int or(int left, int right){
+        return left != 0 || right != 0 ? 1 : 0;
+    }
+
+    static int mod(int left, int right, String function, int line){
+        if (right == 0)
+            throw new RabbitException("modulo by zero", function, line);
+        return left % right;
+    }
+
+    static Object nullCheck(Object value, String function, int line){
+        if (value == null)
+            throw new RabbitException("null check failed", function, line);
+        return value;
+    }
+
+    static Object checkCast(Object value, StructType type, String function, int line){
+        if (value != null && !(value instanceof Instance instance && instance.getType() == type))
+            throw new RabbitException("cannot cast " + value + " to " + type, function, line);
+        return value;
+    }
+
+    static Instance instance(Object value, String function, int line){
+        if (value instanceof Instance instance) return instance;
+        throw new RabbitException(value == null ? "null reference" : "malformed code, " + value + " is no instance", function, line);
+    }
+
+    static ArrayObject array(Object value, String function, int line){
+        if (value instanceof ArrayObject array) return array;
+        throw new RabbitException(value == null ? "null reference" : "malformed code, " + value + " is no array", function, line);
+    }
+
+    // the type the method of a template call is looked up in
+    static StructType type(Object receiver, String function, int line){
+        return instance(receiver, function, line).getType();
+    }
+
+    static NativeFunction nativeFunction(NativeFunction resolved, String name, String function, int line){
+        if (resolved == null)
+            throw new RabbitException("no native function " + name, function, line);
+        return resolved;
+    }
+
+    static RabbitException noMethod(StructType type, String name){
+        return new RabbitException(type + " has no method " + name, name, -1);
+    }
+
+    static RabbitException error(String message, String function, int line){
+        return new RabbitException(message, function, line);
+    }
+}
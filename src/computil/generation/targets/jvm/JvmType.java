@@ -0,0 +1,32 @@
+package computil.generation.targets.jvm;
+
+// the static type of a value on the jvm, NONE while nothing is known about it yet
+enum JvmType {
+
+    NONE("Ljava/lang/Object;"),
+    INT("I"),
+    FLOAT("F"),
+    OBJECT("Ljava/lang/Object;");
+
+    final String descriptor;
+
+    JvmType(String descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    // values of different types only meet as objects
+    JvmType join(JvmType other){
+        if (this == other || other == NONE) return this;
+        if (this == NONE) return other;
+        return OBJECT;
+    }
+
+    boolean isNumber(){
+        return this == INT || this == FLOAT;
+    }
+
+    // values of which nothing is known are objects
+    JvmType orObject(){
+        return this == NONE ? OBJECT : this;
+    }
+}
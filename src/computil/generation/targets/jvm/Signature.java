@@ -0,0 +1,60 @@
+package computil.generation.targets.jvm;
+
+import java.util.Arrays;
+
+/*
+ * The types a function is compiled with. Parameters are in the order the arguments lie on the stack, the
+ * last argument first, so a call needs no reordering. Every local has one type throughout the function.
+ */
+class Signature {
+
+    final JvmType[] parameters;
+
+    final JvmType[] locals;
+
+    JvmType result = JvmType.NONE;
+
+    // whether a type was widened since the flag was last reset
+    boolean changed = false;
+
+    Signature(int parameters, int locals) {
+        this.parameters = new JvmType[parameters];
+        this.locals = new JvmType[locals];
+        Arrays.fill(this.parameters, JvmType.NONE);
+        Arrays.fill(this.locals, JvmType.NONE);
+    }
+
+    void parameter(int index, JvmType type){
+        JvmType joined = parameters[index].join(type);
+        changed |= joined != parameters[index];
+        parameters[index] = joined;
+    }
+
+    void local(int address, JvmType type){
+        JvmType joined = locals[address].join(type);
+        changed |= joined != locals[address];
+        locals[address] = joined;
+    }
+
+    void result(JvmType type){
+        JvmType joined = result.join(type);
+        changed |= joined != result;
+        result = joined;
+    }
+
+    // types nothing is known about become objects, once inference is done
+    void complete(){
+        for (int i = 0; i < parameters.length; i++)
+            parameters[i] = parameters[i].orObject();
+        for (int i = 0; i < locals.length; i++)
+            locals[i] = locals[i].orObject();
+        result = result.orObject();
+    }
+
+    String descriptor(){
+        StringBuilder sb = new StringBuilder("(");
+        for (JvmType parameter : parameters)
+            sb.append(parameter.descriptor);
+        return sb.append(')').append(result.descriptor).toString();
+    }
+}
@@ -64,7 +64,16 @@ public enum Opcode {
     BRANCH_NOT_ZERO,
     BRANCH_ZERO,
 
-    NEW_LINE
+    NEW_LINE,
+
+    // superinstructions, only emitted with minor version 2
+    LOAD2_ADD_I,
+    LOAD_GET_FIELD,
+    CMP_BRANCH,
+    INC_LOCAL,
+
+    // prefix of an instruction whose operands are varints, only emitted from major version 2
+    WIDE
     ;
 
 
@@ -0,0 +1,11 @@
+package computil.generation.targets.rbt;
+
+// an operand or count too large for the encoding of RabbitBytecodeV1, the program needs RabbitBytecodeV2
+public class OperandOverflowException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public OperandOverflowException(String message) {
+        super(message);
+    }
+}
@@ -3,38 +3,50 @@ package computil.generation.targets.rbt;
 import computil.generation.*;
 import computil.generation.instructions.*;
 import computil.generation.pool.*;
+import computil.util.OutputBuffer;
 
-import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public class RabbitBytecodeDisV1
         implements Target, PoolVisitor, PoolConstantVisitor,
         FunctionVisitor, InstructionVisitor, StructVisitor {
 
-    private final OutputStream out;
+    private final OutputBuffer out;
+
+    private final boolean superinstructions;
 
     private int nextPoolAddress = 0;
 
     public RabbitBytecodeDisV1(OutputStream out) {
-        this.out = out;
+        this(out, false);
+    }
+
+    public RabbitBytecodeDisV1(OutputStream out, boolean superinstructions) {
+        this.out = new OutputBuffer(out);
+        this.superinstructions = superinstructions;
     }
 
 
-    private void write(String s){
-        try {
-            out.write(s.getBytes(StandardCharsets.UTF_8));
-        }catch (IOException ignored){
-        }
+    protected void write(String s){
+        out.writeUTF8(s);
+    }
+
+    public int getMinor(){
+        return superinstructions ? 2 : 1;
+    }
+
+    public int getMajor(){
+        return 1;
     }
 
     @Override
     public void write(IRUnit unit) {
         write("magic number: 0xDEAD\n");
-        write("major: " + 1 + "\n");
-        write("major: " + 1 + "\n");
+        write("minor: " + getMinor() + "\n");
+        write("major: " + getMajor() + "\n");
         write("entry point: " + unit.getEntryPoint() + "\n");
 
         Pool pool = unit.getPool();
@@ -47,8 +59,15 @@ public class RabbitBytecodeDisV1
         final Collection<Struct> structs = unit.getStructs();
         for (Struct struct : structs)
             struct.accept(this);
+
+        writeCallSites(unit.getCallSites());
+
+        out.flush();
     }
 
+    // version 1 has no call sites, template methods are looked up by name on every call
+    protected void writeCallSites(List<CallSite> sites){}
+
 
     /* ------------ write constant pool ------------ */
 
@@ -112,19 +131,33 @@ public class RabbitBytecodeDisV1
                 + " stack=" + function.getStackSize()
                 + " locals=" + function.getLocals() + "\n";
         write(s);
-        for (Instruction instruction : function)
+        for (Instruction instruction : linearize(function))
             instruction.accept(this);
     }
 
-    private void writeInstruction(Opcode opcode, int... args){
+    protected List<Instruction> linearize(Function function){
+        return function.linearize();
+    }
+
+    protected void writeInstruction(Opcode opcode, int... args){
         StringBuilder sb = new StringBuilder("\t");
-        sb.append(opcode.toString());
+        sb.append(widePrefix(args, 0)).append(opcode.toString());
         for (int arg : args)
             sb.append(" ").append(arg);
         sb.append("\n");
         write(sb.toString());
     }
 
+    // jump-addresses and line numbers
+    private void writeShortInstruction(Opcode opcode, int arg){
+        write("\t" + widePrefix(new int[0], arg) + opcode + " " + arg + "\n");
+    }
+
+    // marks instructions written in a wide form, there is none in this version
+    protected String widePrefix(int[] operands, int shortOperand){
+        return "";
+    }
+
     @Override
     public void visitPushNull(PushNull pushNull) {
         writeInstruction(Opcode.PUSH_NULL);
@@ -262,24 +295,47 @@ public class RabbitBytecodeDisV1
 
     @Override
     public void visitGoto(Goto aGoto) {
-        writeInstruction(Opcode.GOTO, aGoto.getAddress());
+        writeShortInstruction(Opcode.GOTO, aGoto.getAddress());
     }
 
     @Override
     public void visitBranchIfFalse(BranchIfFalse branchIfFalse) {
-        writeInstruction(Opcode.BRANCH_ZERO, branchIfFalse.getAddress());
+        writeShortInstruction(Opcode.BRANCH_ZERO, branchIfFalse.getAddress());
     }
 
     @Override
     public void visitBranchIfTrue(BranchIfTrue branchIfTrue) {
-        writeInstruction(Opcode.BRANCH_NOT_ZERO, branchIfTrue.getAddress());
+        writeShortInstruction(Opcode.BRANCH_NOT_ZERO, branchIfTrue.getAddress());
     }
 
     @Override
     public void visitNewLineNumber(NewLineNumber newLineNumber) {
-        writeInstruction(Opcode.NEW_LINE, newLineNumber.getLine());
+        writeShortInstruction(Opcode.NEW_LINE, newLineNumber.getLine());
+    }
+
+
+    @Override
+    public void visitLoad2AddInt(Load2AddInt load2AddInt) {
+        writeInstruction(Opcode.LOAD2_ADD_I, load2AddInt.getFirst(), load2AddInt.getSecond());
+    }
+
+    @Override
+    public void visitLoadGetField(LoadGetField loadGetField) {
+        writeInstruction(Opcode.LOAD_GET_FIELD, loadGetField.getLocal(), loadGetField.getField());
     }
 
+    @Override
+    public void visitCompareBranch(CompareBranch compareBranch) {
+        Opcode comparison = RabbitBytecodeV1.byOperation("bool", compareBranch.getComparison());
+        int jumpIfTrue = compareBranch.isJumpIfTrue() ? 1 : 0;
+        write("\t" + widePrefix(new int[] {comparison.ordinal(), jumpIfTrue}, compareBranch.getAddress())
+                + Opcode.CMP_BRANCH + " " + comparison + " " + jumpIfTrue + " " + compareBranch.getAddress() + "\n");
+    }
+
+    @Override
+    public void visitIncLocal(IncLocal incLocal) {
+        writeInstruction(Opcode.INC_LOCAL, incLocal.getAddress(), incLocal.getDelta());
+    }
 
 
     /* ------------ write structs ------------ */
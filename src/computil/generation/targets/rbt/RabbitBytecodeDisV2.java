@@ -0,0 +1,64 @@
+package computil.generation.targets.rbt;
+
+import computil.generation.CallSite;
+import computil.generation.Function;
+import computil.generation.LineNumberTable;
+import computil.generation.instructions.Instruction;
+import computil.generation.instructions.InvokeTemplate;
+
+import java.io.OutputStream;
+import java.util.List;
+
+// lists what RabbitBytecodeV2 writes, instructions in wide form are prefixed with WIDE
+public class RabbitBytecodeDisV2 extends RabbitBytecodeDisV1 {
+
+    private LineNumberTable lines;
+
+    public RabbitBytecodeDisV2(OutputStream out) {
+        super(out);
+    }
+
+    public RabbitBytecodeDisV2(OutputStream out, boolean superinstructions) {
+        super(out, superinstructions);
+    }
+
+    @Override
+    public int getMajor() {
+        return 2;
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        super.visitFunction(function);
+        if (lines.isEmpty()) return;
+        StringBuilder sb = new StringBuilder("lines:\n");
+        for (LineNumberTable.Entry entry : lines)
+            sb.append("\tline ").append(entry.line()).append(": ").append(entry.pc()).append("\n");
+        write(sb.toString());
+    }
+
+    @Override
+    public void visitInvokeTemplate(InvokeTemplate invokeTemplate) {
+        writeInstruction(Opcode.INVOKE_TEMPLATE, invokeTemplate.getAddress(), invokeTemplate.getArguments(), invokeTemplate.getSite());
+    }
+
+    @Override
+    protected void writeCallSites(List<CallSite> sites) {
+        if (sites.isEmpty()) return;
+        StringBuilder sb = new StringBuilder("\n\ncall-sites:");
+        for (int i = 0; i < sites.size(); i++)
+            sb.append("\n\t").append(i).append(": ").append(sites.get(i).method()).append(" argc=").append(sites.get(i).arguments());
+        write(sb.append("\n").toString());
+    }
+
+    @Override
+    protected List<Instruction> linearize(Function function) {
+        lines = new LineNumberTable();
+        return function.linearize(lines);
+    }
+
+    @Override
+    protected String widePrefix(int[] operands, int shortOperand) {
+        return RabbitBytecodeV2.isWide(operands, shortOperand) ? Opcode.WIDE + " " : "";
+    }
+}
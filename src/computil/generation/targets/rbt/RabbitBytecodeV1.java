@@ -4,11 +4,12 @@ import computil.generation.*;
 import computil.generation.instructions.*;
 import computil.generation.pool.*;
 import computil.tree.Operation;
+import computil.util.OutputBuffer;
 
-import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public class RabbitBytecodeV1
@@ -16,39 +17,77 @@ public class RabbitBytecodeV1
         FunctionVisitor, InstructionVisitor, StructVisitor {
 
 
-    private final OutputStream out;
+    private final OutputBuffer out;
+
+    private final boolean superinstructions;
 
     public RabbitBytecodeV1(OutputStream out) {
-        this.out = out;
+        this(out, false);
+    }
+
+    // the dialect with superinstructions is marked by minor version 2
+    public RabbitBytecodeV1(OutputStream out, boolean superinstructions) {
+        this.out = new OutputBuffer(out);
+        this.superinstructions = superinstructions;
+    }
+
+    protected void write(int b){
+        out.write(b);
+    }
+
+    protected void write(byte[] b){
+        out.write(b);
+    }
+
+    protected void writeInt(int value){
+        out.writeInt(value);
+    }
+
+    protected void writeVarInt(int value){
+        out.writeVarInt(value);
+    }
+
+    protected void writeString(String s){
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeLength(bytes.length);
+        write(bytes);
     }
 
-    private void write(int b){
-        try {
-            out.write(b);
-        }catch (IOException ignored){}
+    // counts and indices take a single byte in this version
+    protected void writeCount(int value){
+        if (value > 0xFF)
+            throw new OperandOverflowException(value + " does not fit into a byte");
+        write(value);
     }
 
-    private void write(byte[] b){
-        try {
-            out.write(b);
-        }catch (IOException ignored){}
+    protected void writeLength(int value){
+        writeInt(value);
     }
 
-    private void writeInt(int value){
-        write(new byte[] {
-                (byte)(value >>> 24),
-                (byte)(value >>> 16),
-                (byte)(value >>> 8),
-                (byte)value});
+    // operands take a single byte each, signed operands are written as their lower byte
+    protected void writeInstruction(Opcode opcode, int... operands){
+        write(1 + operands.length);
+        writeOpcode(opcode);
+        for (int operand : operands){
+            if (operand > 0xFF)
+                throw new OperandOverflowException(opcode + " operand " + operand + " does not fit into a byte");
+            write(operand);
+        }
     }
 
-    private void writeString(String s){
-        writeInt(s.length());
-        write(s.getBytes(StandardCharsets.UTF_8));
+    // the byte operands are followed by one encoded in 2 bytes, a jump-address or line number
+    protected void writeShortInstruction(Opcode opcode, int shortOperand, int... operands){
+        if (shortOperand > 0xFFFF)
+            throw new OperandOverflowException(opcode + " operand " + shortOperand + " does not fit into 2 bytes");
+        write(3 + operands.length);
+        writeOpcode(opcode);
+        for (int operand : operands)
+            write(operand);
+        out.writeShort(shortOperand);
     }
 
     public int getMinor(){
-        return 1;
+        return superinstructions ? 2 : 1;
     }
 
     public int getMajor(){
@@ -57,31 +96,56 @@ public class RabbitBytecodeV1
 
     @Override
     public void write(IRUnit unit) {
-        write(0xDE); write(0xAD); // magic number 0xDEAD
-        writeInt(getMinor());
-        writeInt(getMajor());
-        write(unit.getEntryPoint());
+        writeHeader();
+        writeCount(unit.getEntryPoint());
 
         Pool pool = unit.getPool();
         pool.accept(this);
 
-        final Collection<Function> functions = unit.getFunctions();
-        write(functions.size());
+        writeFunctions(unit.getFunctions());
+        writeStructs(unit.getStructs());
+
+        flush();
+    }
+
+    protected void writeHeader(){
+        write(0xDE); write(0xAD); // magic number 0xDEAD
+        writeInt(getMinor());
+        writeInt(getMajor());
+    }
+
+    protected void writeFunctions(Collection<Function> functions){
+        writeCount(functions.size());
         for (Function function : functions)
             function.accept(this);
+    }
 
-        final Collection<Struct> structs = unit.getStructs();
-        write(structs.size());
+    protected void writeStructs(Collection<Struct> structs){
+        writeCount(structs.size());
         for (Struct struct : structs)
             struct.accept(this);
     }
 
+    // the number of bytes written so far
+    protected int position(){
+        return out.size();
+    }
+
+    // overwrites an int written before at the given position
+    protected void patchInt(int position, int value){
+        out.putInt(position, value);
+    }
+
+    protected void flush(){
+        out.flush();
+    }
+
 
     /* ------------ write constant pool ------------ */
 
     @Override
     public void visitPool(Pool pool) {
-        write(pool.size());
+        writeCount(pool.size());
         for (PoolConstant<?> constant : pool)
             constant.accept(this);
     }
@@ -141,231 +205,209 @@ public class RabbitBytecodeV1
     @Override
     public void visitFunction(Function function) {
         writeString(function.getName());
-        write(function.getStackSize());
-        write(function.getLocals());
+        writeCount(function.getStackSize());
+        writeCount(function.getLocals());
 
-        writeInt(function.getStreamSize());
+        List<Instruction> instructions = linearize(function);
+        writeLength(instructions.size());
 
-        for (Instruction instruction : function)
+        for (Instruction instruction : instructions)
             instruction.accept(this);
     }
 
-    private void writeOpcode(Opcode opcode){
+    // line numbers are NEW_LINE instructions in this version
+    protected List<Instruction> linearize(Function function){
+        return function.linearize();
+    }
+
+    protected void writeOpcode(Opcode opcode){
         write(opcode.ordinal());
     }
 
     @Override
     public void visitPushNull(PushNull pushNull) {
-        write(1);
-        writeOpcode(Opcode.PUSH_NULL);
+        writeInstruction(Opcode.PUSH_NULL);
     }
 
     @Override
     public void visitPushInt(PushInt pushInt) {
-        write(2);
-        writeOpcode(Opcode.PUSH_INT);
-        write(pushInt.getValue());
+        writeInstruction(Opcode.PUSH_INT, pushInt.getValue());
     }
 
     @Override
     public void visitPushBool(PushBool pushBool) {
-        write(2);
-        writeOpcode(Opcode.PUSH_INT);
-        write(pushBool.getValue() ? 1 : 0);
+        writeInstruction(Opcode.PUSH_INT, pushBool.getValue() ? 1 : 0);
     }
 
     @Override
     public void visitLoadConst(LoadConst loadConst) {
-        write(2);
-        writeOpcode(Opcode.LOAD_CONST);
-        write(loadConst.getAddress());
+        writeInstruction(Opcode.LOAD_CONST, loadConst.getAddress());
     }
 
     @Override
     public void visitLoadLocal(LoadLocal loadLocal) {
-        write(2);
-        writeOpcode(Opcode.LOAD_LOCAl);
-        write(loadLocal.getAddress());
+        writeInstruction(Opcode.LOAD_LOCAl, loadLocal.getAddress());
     }
 
     @Override
     public void visitStoreLocal(StoreLocal storeLocal) {
-        write(2);
-        writeOpcode(Opcode.STORE_LOCAL);
-        write(storeLocal.getAddress());
+        writeInstruction(Opcode.STORE_LOCAL, storeLocal.getAddress());
     }
 
     @Override
     public void visitNullCheck(NullCheck nullCheck) {
-        write(1);
-        writeOpcode(Opcode.NULL_CHECK);
+        writeInstruction(Opcode.NULL_CHECK);
     }
 
     @Override
     public void visitCheckCast(CheckCast checkCast) {
-        write(2);
-        writeOpcode(Opcode.CHECK_CAST);
-        write(checkCast.getAddress());
+        writeInstruction(Opcode.CHECK_CAST, checkCast.getAddress());
     }
 
     @Override
     public void visitInt2Float(Int2Float int2Float) {
-        write(1);
-        writeOpcode(Opcode.I2F);
+        writeInstruction(Opcode.I2F);
     }
 
     @Override
     public void visitFloat2Int(Float2Int float2Int) {
-        write(1);
-        writeOpcode(Opcode.F2I);
+        writeInstruction(Opcode.F2I);
     }
 
     @Override
     public void visitMakeArray(MakeArray makeArray) {
-        write(2);
-        writeOpcode(Opcode.MAKE_ARRAY);
-        write(makeArray.getSize());
+        writeInstruction(Opcode.MAKE_ARRAY, makeArray.getSize());
     }
 
     @Override
     public void visitReadArray(ReadArray readArray) {
-        write(2);
-        writeOpcode(Opcode.READ_ARRAY);
-        write(readArray.getAddress());
+        writeInstruction(Opcode.READ_ARRAY, readArray.getAddress());
     }
 
     @Override
     public void visitWriteArray(WriteArray writeArray) {
-        write(2);
-        writeOpcode(Opcode.WRITE_ARRAY);
-        write(writeArray.getAddress());
+        writeInstruction(Opcode.WRITE_ARRAY, writeArray.getAddress());
     }
 
     @Override
     public void visitNewInstance(NewInstance newInstance) {
-        write(2);
-        writeOpcode(Opcode.NEW);
-        write(newInstance.getAddress());
+        writeInstruction(Opcode.NEW, newInstance.getAddress());
     }
 
     @Override
     public void visitFree(Free free) {
-        write(1);
-        writeOpcode(Opcode.FREE);
+        writeInstruction(Opcode.FREE);
     }
 
     @Override
     public void visitGetField(GetField getField) {
-        write(2);
-        writeOpcode(Opcode.GET_FIELD);
-        write(getField.getAddress());
+        writeInstruction(Opcode.GET_FIELD, getField.getAddress());
     }
 
     @Override
     public void visitPutField(PutField putField) {
-        write(2);
-        writeOpcode(Opcode.PUT_FIELD);
-        write(putField.getAddress());
+        writeInstruction(Opcode.PUT_FIELD, putField.getAddress());
     }
 
     @Override
     public void visitInvokeVirtual(InvokeVirtual invokeVirtual) {
-        write(3);
-        writeOpcode(Opcode.INVOKE_VIRTUAL);
-        write(invokeVirtual.getAddress());
-        write(invokeVirtual.getArguments());
+        writeInstruction(Opcode.INVOKE_VIRTUAL, invokeVirtual.getAddress(), invokeVirtual.getArguments());
     }
 
     @Override
     public void visitInvokeTemplate(InvokeTemplate invokeTemplate) {
-        write(3);
-        writeOpcode(Opcode.INVOKE_TEMPLATE);
-        write(invokeTemplate.getAddress());
-        write(invokeTemplate.getArguments());
+        writeInstruction(Opcode.INVOKE_TEMPLATE, invokeTemplate.getAddress(), invokeTemplate.getArguments());
     }
 
     @Override
     public void visitInvokeNative(InvokeNative invokeNative) {
-        write(3);
-        writeOpcode(Opcode.INVOKE_NATIVE);
-        write(invokeNative.getAddress());
-        write(invokeNative.getArguments());
+        writeInstruction(Opcode.INVOKE_NATIVE, invokeNative.getAddress(), invokeNative.getArguments());
     }
 
     @Override
     public void visitReturn(Return aReturn) {
-        write(1);
-        writeOpcode(Opcode.RETURN);
+        writeInstruction(Opcode.RETURN);
     }
 
     @Override
     public void visitDup(Dup dup) {
-        write(1);
-        writeOpcode(Opcode.DUP);
+        writeInstruction(Opcode.DUP);
     }
 
     @Override
     public void visitSwap(Swap swap) {
-        write(1);
-        writeOpcode(Opcode.SWAP);
+        writeInstruction(Opcode.SWAP);
     }
 
     @Override
     public void visitPop(Pop pop) {
-        write(1);
-        writeOpcode(Opcode.POP);
+        writeInstruction(Opcode.POP);
     }
 
     @Override
     public void visitNot(Not not) {
-        write(1);
-        writeOpcode(Opcode.NOT);
+        writeInstruction(Opcode.NOT);
     }
 
     @Override
     public void visitNegate(Negate negate) {
-        write(1);
-        writeOpcode(Opcode.NEG);
+        writeInstruction(Opcode.NEG);
     }
 
     @Override
     public void visitBinaryOperation(BinaryOperation binaryOperation) {
-        write(1);
-        writeOpcode(byOperation(binaryOperation.getType(), binaryOperation.getOperation()));
+        writeInstruction(byOperation(binaryOperation.getType(), binaryOperation.getOperation()));
     }
 
     @Override
     public void visitGoto(Goto aGoto) {
-        write(3); // jump-address encoded in 2 bytes
-        writeOpcode(Opcode.GOTO);
-        write(int2twoBytes(aGoto.getAddress()));
+        writeShortInstruction(Opcode.GOTO, aGoto.getAddress());
     }
 
     @Override
     public void visitBranchIfFalse(BranchIfFalse branchIfFalse) {
-        write(3); // jump-address encoded in 2 bytes
-        writeOpcode(Opcode.BRANCH_ZERO);
-        write(int2twoBytes(branchIfFalse.getAddress()));
+        writeShortInstruction(Opcode.BRANCH_ZERO, branchIfFalse.getAddress());
     }
 
     @Override
     public void visitBranchIfTrue(BranchIfTrue branchIfTrue) {
-        write(3); // jump-address encoded in 2 bytes
-        writeOpcode(Opcode.BRANCH_NOT_ZERO);
-        write(int2twoBytes(branchIfTrue.getAddress()));
+        writeShortInstruction(Opcode.BRANCH_NOT_ZERO, branchIfTrue.getAddress());
     }
 
     @Override
     public void visitNewLineNumber(NewLineNumber newLineNumber) {
-        write(3); // line number encoded in 2 bytes
-        writeOpcode(Opcode.NEW_LINE);
-        write(int2twoBytes(newLineNumber.getLine()));
+        writeShortInstruction(Opcode.NEW_LINE, newLineNumber.getLine());
+    }
+
+    @Override
+    public void visitLoad2AddInt(Load2AddInt load2AddInt) {
+        requireSuperinstructions();
+        writeInstruction(Opcode.LOAD2_ADD_I, load2AddInt.getFirst(), load2AddInt.getSecond());
+    }
+
+    @Override
+    public void visitLoadGetField(LoadGetField loadGetField) {
+        requireSuperinstructions();
+        writeInstruction(Opcode.LOAD_GET_FIELD, loadGetField.getLocal(), loadGetField.getField());
+    }
+
+    @Override
+    public void visitCompareBranch(CompareBranch compareBranch) {
+        requireSuperinstructions();
+        // comparison opcode, jump on true or false, jump-address
+        writeShortInstruction(Opcode.CMP_BRANCH, compareBranch.getAddress(),
+                byOperation("bool", compareBranch.getComparison()).ordinal(), compareBranch.isJumpIfTrue() ? 1 : 0);
+    }
+
+    @Override
+    public void visitIncLocal(IncLocal incLocal) {
+        requireSuperinstructions();
+        writeInstruction(Opcode.INC_LOCAL, incLocal.getAddress(), incLocal.getDelta());
     }
 
-    private byte[] int2twoBytes(int address){
-        return new byte[] {
-                (byte)((address >> 8) & 0xFF),
-                (byte)(address & 0xFF)};
+    private void requireSuperinstructions(){
+        if (!superinstructions)
+            throw new IllegalStateException("superinstructions require minor version 2");
     }
 
 
@@ -376,14 +418,14 @@ public class RabbitBytecodeV1
     @Override
     public void visitStruct(Struct struct) {
         writeString(struct.getName());
-        write(struct.getSize());
+        writeCount(struct.getSize());
 
         final Map<String, Integer> methods = struct.getMethods();
-        write(methods.size());
+        writeCount(methods.size());
 
         for (Map.Entry<String, Integer> method : methods.entrySet()){
             writeString(method.getKey());
-            write(method.getValue());
+            writeCount(method.getValue());
         }
 
     }
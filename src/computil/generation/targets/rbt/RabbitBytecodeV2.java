@@ -0,0 +1,216 @@
+package computil.generation.targets.rbt;
+
+import computil.generation.CallSite;
+import computil.generation.Function;
+import computil.generation.IRUnit;
+import computil.generation.LineNumberTable;
+import computil.generation.Struct;
+import computil.generation.instructions.Instruction;
+import computil.generation.instructions.InvokeTemplate;
+import computil.util.NameHash;
+import computil.util.OutputBuffer;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/*
+ * Version 2 of the rbt format writes counts, indices and lengths as unsigned LEB128 varints, so a program
+ * is no longer limited to 255 constants, functions, structs or locals. Instructions keep the operands of
+ * version 1, single bytes and a 2 byte jump-address, as long as these fit. Otherwise the opcode is
+ * preceded by WIDE and all of its operands are varints holding their 32 bits. The length byte ahead of
+ * every instruction covers the prefix, so an instruction still counts as one for jump-addresses.
+ * Line numbers are not part of the instructions, the code of a function is followed by a table of the
+ * instruction indices where the line changes, see writeLineNumbers.
+ *
+ * The header is followed by a directory of 4 byte offsets from the start of the file: to the pool, the
+ * functions, the function index, the structs and the call sites, in this order. The function index is a
+ * count followed by 12 byte entries, each the NameHash of a function, the offset of its code and its
+ * length. The code of a function starts with its name and ends with its line table. Entries are sorted by
+ * hash, compared as signed ints, so a loader can find a function by binary search and decode only the
+ * functions called.
+ *
+ * INVOKE_TEMPLATE has the number of its call site as third operand. The call sites are a count followed by
+ * the NameHash of the method and the number of arguments of every site, so a VM can size a cache of the
+ * method found per site up front. The methods of a struct are an open addressing table, see visitStruct,
+ * so a lookup on a cache miss is a single probe in most cases.
+ */
+public class RabbitBytecodeV2 extends RabbitBytecodeV1 {
+
+    private LineNumberTable lines;
+
+    // hash, offset and length of every function written so far
+    private final List<int[]> index = new ArrayList<>();
+
+    public RabbitBytecodeV2(OutputStream out) {
+        super(out);
+    }
+
+    public RabbitBytecodeV2(OutputStream out, boolean superinstructions) {
+        super(out, superinstructions);
+    }
+
+    @Override
+    public int getMajor() {
+        return 2;
+    }
+
+    @Override
+    public void write(IRUnit unit) {
+        writeHeader();
+        int directory = position();
+        for (int i = 0; i < 5; i++)
+            writeInt(0);
+        writeCount(unit.getEntryPoint());
+
+        patchInt(directory, position());
+        unit.getPool().accept(this);
+        patchInt(directory + 4, position());
+        writeFunctions(unit.getFunctions());
+        patchInt(directory + 8, position());
+        writeFunctionIndex();
+        patchInt(directory + 12, position());
+        writeStructs(unit.getStructs());
+        patchInt(directory + 16, position());
+        writeCallSites(unit.getCallSites());
+
+        flush();
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        int offset = position();
+        super.visitFunction(function);
+        writeLineNumbers(lines);
+        index.add(new int[]{NameHash.of(function.getName()), offset, position() - offset});
+    }
+
+    private void writeFunctionIndex(){
+        index.sort(Comparator.comparingInt(entry -> entry[0]));
+        writeCount(index.size());
+        for (int[] entry : index)
+            for (int value : entry)
+                writeInt(value);
+        index.clear();
+    }
+
+    private void writeCallSites(List<CallSite> sites){
+        writeCount(sites.size());
+        for (CallSite site : sites){
+            writeInt(NameHash.of(site.method()));
+            writeCount(site.arguments());
+        }
+    }
+
+    @Override
+    public void visitInvokeTemplate(InvokeTemplate invokeTemplate) {
+        writeInstruction(Opcode.INVOKE_TEMPLATE, invokeTemplate.getAddress(), invokeTemplate.getArguments(), invokeTemplate.getSite());
+    }
+
+    /*
+     * The name, size and number of methods are followed by the capacity of the method table, a power of two
+     * at least twice the number of methods, or 0 without any. A method is placed at its NameHash modulo the
+     * capacity or the next free slot behind, wrapping around. Every slot is the pool index of the method
+     * plus one, 0 if the slot is free, and for a method its NameHash and name.
+     */
+    @Override
+    public void visitStruct(Struct struct) {
+        writeString(struct.getName());
+        writeCount(struct.getSize());
+        Map<String, Integer> methods = struct.getMethods();
+        writeCount(methods.size());
+
+        int capacity = methods.isEmpty() ? 0 : Integer.highestOneBit(methods.size() * 4 - 1);
+        writeCount(capacity);
+        String[] slots = new String[capacity];
+        // placed in the order of their names, so the table does not depend on the order of the map
+        for (String name : new TreeSet<>(methods.keySet())){
+            int slot = NameHash.of(name) & (capacity - 1);
+            while (slots[slot] != null)
+                slot = (slot + 1) & (capacity - 1);
+            slots[slot] = name;
+        }
+        for (String name : slots){
+            if (name == null){
+                writeCount(0);
+                continue;
+            }
+            writeCount(methods.get(name) + 1);
+            writeInt(NameHash.of(name));
+            writeString(name);
+        }
+    }
+
+    @Override
+    protected List<Instruction> linearize(Function function) {
+        lines = new LineNumberTable();
+        return function.linearize(lines);
+    }
+
+    // the number of entries, then each as the growth of its index and the zigzag encoded change of its line,
+    // both relative to the previous entry, or 0 for the first one
+    private void writeLineNumbers(LineNumberTable lines){
+        writeCount(lines.size());
+        int pc = 0;
+        int line = 0;
+        for (LineNumberTable.Entry entry : lines){
+            int delta = entry.line() - line;
+            writeVarInt(entry.pc() - pc);
+            writeVarInt((delta << 1) ^ (delta >> 31));
+            pc = entry.pc();
+            line = entry.line();
+        }
+    }
+
+    @Override
+    protected void writeCount(int value) {
+        writeVarInt(value);
+    }
+
+    @Override
+    protected void writeLength(int value) {
+        writeVarInt(value);
+    }
+
+    @Override
+    protected void writeInstruction(Opcode opcode, int... operands) {
+        if (isWide(operands, 0))
+            writeWideInstruction(opcode, operands);
+        else super.writeInstruction(opcode, operands);
+    }
+
+    @Override
+    protected void writeShortInstruction(Opcode opcode, int shortOperand, int... operands) {
+        if (!isWide(operands, shortOperand)){
+            super.writeShortInstruction(opcode, shortOperand, operands);
+            return;
+        }
+        int[] all = new int[operands.length + 1];
+        System.arraycopy(operands, 0, all, 0, operands.length);
+        all[operands.length] = shortOperand;
+        writeWideInstruction(opcode, all);
+    }
+
+    private void writeWideInstruction(Opcode opcode, int... operands){
+        int length = 2;
+        for (int operand : operands)
+            length += OutputBuffer.varIntSize(operand);
+        write(length);
+        writeOpcode(Opcode.WIDE);
+        writeOpcode(opcode);
+        for (int operand : operands)
+            writeVarInt(operand);
+    }
+
+    // whether the operands exceed the short form, signed byte operands never do
+    static boolean isWide(int[] operands, int shortOperand){
+        if (shortOperand > 0xFFFF) return true;
+        for (int operand : operands)
+            if (operand > 0xFF)
+                return true;
+        return false;
+    }
+}
@@ -14,6 +14,11 @@ public class ConstantFolder extends Optimizer<Void> {
         locals.replaceAll((i, t) -> null);
     }
 
+    @Override
+    protected void reset() {
+        locals.clear();
+    }
+
     @Override
     public Void visitFunctionTree(FunctionTree functionTree, Tree parent) {
         locals.clear();
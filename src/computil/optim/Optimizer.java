@@ -9,6 +9,8 @@ public abstract class Optimizer<R> extends TreeScanner<Tree, R> {
 
     private boolean optimizationPerformed = false;
 
+    private int changes = 0;
+
     protected void setOptimizationPerformed(boolean performed){
         this.optimizationPerformed = performed;
     }
@@ -17,12 +19,27 @@ public abstract class Optimizer<R> extends TreeScanner<Tree, R> {
         return optimizationPerformed;
     }
 
+    public int getChangeCount() {
+        return changes;
+    }
+
     protected void replace(Tree owner, Tree oldTree, Tree newTree){
-        optimizationPerformed |= owner.replace(oldTree, newTree);
+        if (owner.replace(oldTree, newTree))
+            changed();
     }
 
     protected void remove(Tree owner, Tree toRemove){
-        optimizationPerformed |= owner.remove(toRemove);
+        if (owner.remove(toRemove))
+            changed();
+    }
+
+    private void changed(){
+        optimizationPerformed = true;
+        changes++;
+    }
+
+    // drops state a walk left behind, before a PassManager walks the tree again
+    protected void reset(){
     }
 
 
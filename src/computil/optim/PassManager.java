@@ -0,0 +1,94 @@
+package computil.optim;
+
+import computil.tree.Tree;
+import computil.util.AllocatedBytes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PassManager {
+
+    // the passes reach their fixpoint in a round or two, passes still changing the tree after this many never do
+    private static final int MAX_ROUNDS = 100;
+
+    private final List<Pass> passes = new ArrayList<>();
+
+    private boolean allocations = false;
+
+    // passes run in the order they are registered
+    public PassManager register(Optimizer<?> optimizer){
+        passes.add(new Pass(optimizer));
+        return this;
+    }
+
+    // counts the bytes every pass allocates, -1 in the statistics otherwise or where the jvm does not count them
+    public PassManager countAllocations(){
+        allocations = true;
+        return this;
+    }
+
+    // every pass walks the whole tree in turn, until a round of all passes changes nothing
+    public boolean optimize(Tree root){
+        boolean performed = false;
+        List<String> changing = new ArrayList<>();
+        for (int round = 0; ; round++){
+            changing.clear();
+            for (Pass pass : passes){
+                int changes = pass.optimizer.getChangeCount();
+                long start = System.nanoTime();
+                long allocated = allocatedBytes();
+                pass.optimizer.reset();
+                root.accept(pass.optimizer, null);
+                pass.nanos += System.nanoTime() - start;
+                // -1 from then on if the jvm does not count them
+                pass.allocatedBytes = allocated < 0 || pass.allocatedBytes < 0
+                        ? -1 : pass.allocatedBytes + allocatedBytes() - allocated;
+                if (round > 0) pass.revisits++;
+                if (pass.optimizer.getChangeCount() != changes)
+                    changing.add(pass.optimizer.getClass().getSimpleName());
+            }
+            if (changing.isEmpty())
+                return performed;
+            performed = true;
+            if (round + 1 == MAX_ROUNDS)
+                throw new IllegalStateException("optimizer passes do not converge, still changing after "
+                        + MAX_ROUNDS + " rounds: " + String.join(", ", changing));
+        }
+    }
+
+    private long allocatedBytes(){
+        return allocations ? AllocatedBytes.ofCurrentThread() : -1;
+    }
+
+    public List<PassStatistics> getStatistics(){
+        List<PassStatistics> statistics = new ArrayList<>(passes.size());
+        for (Pass pass : passes)
+            statistics.add(new PassStatistics(pass.optimizer.getClass().getSimpleName(), pass.nanos,
+                    allocations ? pass.allocatedBytes : -1, pass.optimizer.getChangeCount(), pass.revisits));
+        return Collections.unmodifiableList(statistics);
+    }
+
+    public void report(PrintStream out){
+        out.printf("%-24s %10s %8s %8s%n", "pass", "time(ms)", "changes", "revisits");
+        for (PassStatistics statistics : getStatistics())
+            out.printf("%-24s %10.3f %8d %8d%n", statistics.name(),
+                    statistics.nanos() / 1e6, statistics.changes(), statistics.revisits());
+    }
+
+    // revisits are the walks of a pass after its first
+    public record PassStatistics(String name, long nanos, long allocatedBytes, int changes, int revisits) {}
+
+    private static final class Pass {
+        private final Optimizer<?> optimizer;
+        private long nanos = 0;
+        private long allocatedBytes = 0;
+        private int revisits = 0;
+
+        private Pass(Optimizer<?> optimizer) {
+            this.optimizer = optimizer;
+        }
+    }
+
+}
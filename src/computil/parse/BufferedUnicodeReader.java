@@ -0,0 +1,115 @@
+package computil.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+public class BufferedUnicodeReader implements SourceReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    // characters of the previous window which are kept on refill, so pushBack works across blocks
+    private static final int PUSHBACK_RESERVE = 16;
+
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+
+    private final ByteBuffer bytes;
+    private final char[] window;
+
+    private int pos = 0, limit = 0;
+
+    private boolean endOfInput = false;
+    private boolean drained = false;
+
+    // number of consume() calls performed beyond the end of input
+    private int overrun = 0;
+
+    public BufferedUnicodeReader(InputStream in) {
+        this(in, StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedUnicodeReader(InputStream in, int bufferSize) {
+        this(in, StandardCharsets.UTF_8, bufferSize);
+    }
+
+    public BufferedUnicodeReader(InputStream in, Charset charset, int bufferSize) {
+        if (bufferSize <= PUSHBACK_RESERVE)
+            throw new IllegalArgumentException("buffer size must exceed " + PUSHBACK_RESERVE);
+        this.in = in;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(bufferSize);
+        this.window = new char[bufferSize + PUSHBACK_RESERVE];
+    }
+
+    @Override
+    public boolean hasNext(){
+        return pos < limit || fill();
+    }
+
+    @Override
+    public char peek(){
+        return hasNext() ? window[pos] : EOF;
+    }
+
+    @Override
+    public char consume(){
+        if (hasNext())
+            return window[pos++];
+        overrun++;
+        return EOF;
+    }
+
+    @Override
+    public void pushBack(char c){
+        if (overrun > 0) {
+            overrun--;
+            return;
+        }
+        if (pos == 0)
+            throw new IllegalStateException("pushBack exceeds buffered input");
+        window[--pos] = c;
+    }
+
+    private boolean fill(){
+        if (drained) return false;
+
+        int keep = Math.min(PUSHBACK_RESERVE, limit);
+        System.arraycopy(window, limit - keep, window, 0, keep);
+        pos = limit = keep;
+
+        CharBuffer out = CharBuffer.wrap(window, keep, window.length - keep);
+        do {
+            if (!endOfInput) readBlock();
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, out, endOfInput);
+            bytes.compact();
+            if (endOfInput && result.isUnderflow()){
+                decoder.flush(out);
+                drained = true;
+            }
+        } while (out.position() == keep && !drained);
+
+        limit = out.position();
+        return pos < limit;
+    }
+
+    private void readBlock(){
+        try {
+            int n = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            if (n < 0) endOfInput = true;
+            else bytes.position(bytes.position() + n);
+        }catch (IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package computil.parse;
+
+public class CharSequenceReader implements SliceableReader {
+
+    private final CharSequence chars;
+    private int pos;
+
+    // number of consume() calls performed beyond the end of input
+    private int overrun = 0;
+
+    public CharSequenceReader(CharSequence chars) {
+        this(chars, 0);
+    }
+
+    public CharSequenceReader(CharSequence chars, int start) {
+        this.chars = chars;
+        this.pos = start;
+    }
+
+    @Override
+    public boolean hasNext(){
+        return pos < chars.length();
+    }
+
+    @Override
+    public char peek(){
+        return pos < chars.length() ? chars.charAt(pos) : EOF;
+    }
+
+    @Override
+    public char consume(){
+        if (pos < chars.length())
+            return chars.charAt(pos++);
+        overrun++;
+        return EOF;
+    }
+
+    @Override
+    public void pushBack(char c){
+        if (overrun > 0){
+            overrun--;
+            return;
+        }
+        if (pos == 0)
+            throw new IllegalStateException("pushBack before start of input");
+        pos--;
+    }
+
+    @Override
+    public int position(){
+        return pos;
+    }
+
+    @Override
+    public int length(){
+        return chars.length();
+    }
+
+    @Override
+    public CharSequence slice(int start, int end){
+        return chars.subSequence(start, end);
+    }
+
+}
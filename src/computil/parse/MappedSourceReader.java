@@ -0,0 +1,197 @@
+package computil.parse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedSourceReader implements SliceableReader {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int limit;
+
+    private int pos;
+
+    // byte length of the UTF-8 sequence decoded by the last call to decode()
+    private int sequenceLength;
+
+    // low surrogate of a consumed supplementary code point, which is returned next
+    private char pendingLow = 0;
+
+    // number of consume() calls performed beyond the end of input
+    private int overrun = 0;
+
+    // where the last consumed character which is no ASCII starts, slices after it need no scan for them
+    private int lastWide = -1;
+
+    public MappedSourceReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.start = buffer.position();
+        this.limit = buffer.limit();
+        this.pos = start;
+    }
+
+    public static MappedSourceReader map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("source file too large to be mapped: " + path);
+            return new MappedSourceReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public boolean hasNext(){
+        return pendingLow != 0 || pos < limit;
+    }
+
+    @Override
+    public char peek(){
+        if (pendingLow != 0) return pendingLow;
+        if (pos >= limit) return EOF;
+        byte b = buffer.get(pos);
+        if (b >= 0) return (char) b;
+        int codePoint = decode(pos);
+        return Character.isSupplementaryCodePoint(codePoint)
+                ? Character.highSurrogate(codePoint)
+                : (char) codePoint;
+    }
+
+    @Override
+    public char consume(){
+        if (pendingLow != 0){
+            char c = pendingLow;
+            pendingLow = 0;
+            return c;
+        }
+        if (pos >= limit){
+            overrun++;
+            return EOF;
+        }
+        byte b = buffer.get(pos);
+        if (b >= 0){
+            pos++;
+            return (char) b;
+        }
+        int codePoint = decode(pos);
+        lastWide = pos;
+        pos += sequenceLength;
+        if (Character.isSupplementaryCodePoint(codePoint)){
+            pendingLow = Character.lowSurrogate(codePoint);
+            return Character.highSurrogate(codePoint);
+        }
+        return (char) codePoint;
+    }
+
+    @Override
+    public void pushBack(char c){
+        if (overrun > 0){
+            overrun--;
+            return;
+        }
+        if (pendingLow == 0 && Character.isLowSurrogate(c)){
+            pendingLow = c;
+            return;
+        }
+        pendingLow = 0;
+        if (pos == start)
+            throw new IllegalStateException("pushBack before start of input");
+        int steps = 0;
+        do {
+            pos--;
+        } while (pos > start && ++steps < 4 && (buffer.get(pos) & 0xC0) == 0x80);
+    }
+
+    @Override
+    public int position(){
+        return pos;
+    }
+
+    @Override
+    public int length(){
+        return limit;
+    }
+
+    @Override
+    public CharSequence slice(int start, int end){
+        return new ByteSlice(buffer, start, end, start > lastWide || isAscii(buffer, start, end));
+    }
+
+    @Override
+    public String name(Names names, int start, int end){
+        if (start > lastWide || isAscii(buffer, start, end))
+            return names.fromAscii(buffer, start, end);
+        return names.fromSequence(slice(start, end));
+    }
+
+    private int decode(int at){
+        int b0 = buffer.get(at) & 0xFF;
+        int length = b0 >= 0xF0 ? 4 : b0 >= 0xE0 ? 3 : b0 >= 0xC0 ? 2 : 1;
+        sequenceLength = 1;
+        if (length == 1 || at + length > limit)
+            return REPLACEMENT;
+
+        int codePoint = b0 & (0xFF >> (length + 1));
+        for (int i = 1; i < length; i++){
+            int b = buffer.get(at + i) & 0xFF;
+            if ((b & 0xC0) != 0x80)
+                return REPLACEMENT;
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        sequenceLength = length;
+        return codePoint;
+    }
+
+    private static boolean isAscii(ByteBuffer buffer, int start, int end){
+        for (int i = start; i < end; i++)
+            if (buffer.get(i) < 0) return false;
+        return true;
+    }
+
+    private static final class ByteSlice implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int start, end;
+        private final boolean ascii;
+        private String decoded;
+
+        private ByteSlice(ByteBuffer buffer, int start, int end, boolean ascii) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.ascii = ascii;
+        }
+
+        @Override
+        public int length() {
+            return ascii ? end - start : toString().length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return ascii ? (char) buffer.get(start + index) : toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return ascii
+                    ? new ByteSlice(buffer, this.start + start, this.start + end, true)
+                    : toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            if (decoded == null){
+                byte[] bytes = new byte[end - start];
+                buffer.get(start, bytes);
+                decoded = new String(bytes, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            }
+            return decoded;
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package computil.parse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * The names of one compilation, every spelling stored once as a canonical String. Each name also gets a
+ * dense id in the order the names were entered, so tables over names can be arrays indexed by id.
+ */
+public final class Names {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private String[] table = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // the names by id
+    private String[] names = new String[INITIAL_CAPACITY / 2];
+
+    public Names(String... predefined) {
+        for (String name : predefined)
+            fromSequence(name);
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public String get(int id){
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException(id);
+        return names[id];
+    }
+
+    // the id of a name, entered if it is new, canonical instances are found by identity
+    public int id(String name){
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        String entry;
+        while ((entry = table[index]) != null){
+            if (entry == name || (hashes[index] == hash && entry.equals(name)))
+                return ids[index];
+            index = (index + 1) & mask;
+        }
+        insert(index, hash, name);
+        return size - 1;
+    }
+
+    public String fromChars(char[] buffer, int offset, int length){
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + buffer[i];
+
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        String name;
+        while ((name = table[index]) != null){
+            if (hashes[index] == hash && matches(name, buffer, offset, length))
+                return name;
+            index = (index + 1) & mask;
+        }
+        return insert(index, hash, new String(buffer, offset, length));
+    }
+
+    public String fromSequence(CharSequence chars){
+        int hash = 0;
+        for (int i = 0; i < chars.length(); i++)
+            hash = 31 * hash + chars.charAt(i);
+
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        String name;
+        while ((name = table[index]) != null){
+            if (hashes[index] == hash && name.contentEquals(chars))
+                return name;
+            index = (index + 1) & mask;
+        }
+        return insert(index, hash, chars.toString());
+    }
+
+    // ASCII bytes, one character each
+    public String fromAscii(ByteBuffer bytes, int start, int end){
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + bytes.get(i);
+
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        String name;
+        while ((name = table[index]) != null){
+            if (hashes[index] == hash && matches(name, bytes, start, end))
+                return name;
+            index = (index + 1) & mask;
+        }
+        byte[] chars = new byte[end - start];
+        bytes.get(start, chars);
+        return insert(index, hash, new String(chars, StandardCharsets.ISO_8859_1));
+    }
+
+    private String insert(int index, int hash, String name){
+        table[index] = name;
+        hashes[index] = hash;
+        ids[index] = size;
+        if (size == names.length)
+            names = Arrays.copyOf(names, size * 2);
+        names[size] = name;
+        if (++size * 2 > table.length)
+            grow();
+        return name;
+    }
+
+    private void grow(){
+        String[] oldTable = table;
+        int[] oldHashes = hashes;
+        int[] oldIds = ids;
+        table = new String[oldTable.length * 2];
+        hashes = new int[oldHashes.length * 2];
+        ids = new int[oldIds.length * 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++){
+            if (oldTable[i] == null) continue;
+            int index = spread(oldHashes[i]) & mask;
+            while (table[index] != null)
+                index = (index + 1) & mask;
+            table[index] = oldTable[i];
+            hashes[index] = oldHashes[i];
+            ids[index] = oldIds[i];
+        }
+    }
+
+    private static boolean matches(String name, char[] buffer, int offset, int length){
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++)
+            if (name.charAt(i) != buffer[offset + i])
+                return false;
+        return true;
+    }
+
+    private static boolean matches(String name, ByteBuffer bytes, int start, int end){
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < end - start; i++)
+            if (name.charAt(i) != bytes.get(start + i))
+                return false;
+        return true;
+    }
+
+    private static int spread(int hash){
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,42 @@
+package computil.parse;
+
+import computil.util.Location;
+
+public class SliceToken implements Token {
+
+    private final Location location;
+    private final Object tag;
+    private final CharSequence slice;
+    private final Names names;
+
+    private String lexem;
+
+    public SliceToken(Location location, Object tag, CharSequence slice, Names names) {
+        this.location = location;
+        this.tag = tag;
+        this.slice = slice;
+        this.names = names;
+    }
+
+    @Override
+    public Location getLocation() {
+        return location;
+    }
+
+    @Override
+    public String getLexem() {
+        if (lexem == null)
+            lexem = names.fromSequence(slice);
+        return lexem;
+    }
+
+    @Override
+    public Object getTag() {
+        return tag;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + tag + ", '" + getLexem() + "', " + location + "]";
+    }
+}
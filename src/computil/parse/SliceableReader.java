@@ -0,0 +1,20 @@
+package computil.parse;
+
+// a reader over input it holds as a whole, so lexems can be taken from it in place instead of being copied
+public interface SliceableReader extends SourceReader {
+
+    // the position of the next character, as slice counts them
+    int position();
+
+    // the position after the last character
+    int length();
+
+    // the characters between two positions, which are only read after consuming them
+    CharSequence slice(int start, int end);
+
+    // the characters between two positions as interned name, readers which can intern without a slice do so
+    default String name(Names names, int start, int end){
+        return names.fromSequence(slice(start, end));
+    }
+
+}
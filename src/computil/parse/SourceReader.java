@@ -0,0 +1,15 @@
+package computil.parse;
+
+public interface SourceReader {
+
+    char EOF = (char) -1;
+
+    boolean hasNext();
+
+    char peek();
+
+    char consume();
+
+    void pushBack(char c);
+
+}
@@ -0,0 +1,40 @@
+package computil.parse;
+
+public record TextEdit(int offset, int removedLength, String insertedText) {
+
+    public TextEdit {
+        if (offset < 0 || removedLength < 0)
+            throw new IllegalArgumentException("negative edit range");
+    }
+
+    public int removedEnd(){
+        return offset + removedLength;
+    }
+
+    public int insertedEnd(){
+        return offset + insertedText.length();
+    }
+
+    public int delta(){
+        return insertedText.length() - removedLength;
+    }
+
+    public String apply(String text){
+        return text.substring(0, offset) + insertedText + text.substring(removedEnd());
+    }
+
+    // the one edit turning the old text into the new one, replacing what lies between their common prefix and suffix
+    public static TextEdit between(String oldText, String newText){
+        int prefix = 0;
+        int shorter = Math.min(oldText.length(), newText.length());
+        while (prefix < shorter && oldText.charAt(prefix) == newText.charAt(prefix))
+            prefix++;
+        int suffix = 0;
+        while (suffix < shorter - prefix
+                && oldText.charAt(oldText.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix))
+            suffix++;
+        return new TextEdit(prefix, oldText.length() - prefix - suffix,
+                newText.substring(prefix, newText.length() - suffix));
+    }
+
+}
@@ -4,7 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
 
-public class UnicodeReader {
+public class UnicodeReader implements SourceReader {
 
     private final PushbackInputStream in;
 
@@ -16,22 +16,26 @@ public class UnicodeReader {
         this.in = new PushbackInputStream(in, bufferSize);
     }
 
+    @Override
     public boolean hasNext(){
         byte i = (byte) read();
         unread(i);
         return i != -1;
     }
 
+    @Override
     public char peek(){
         int i = read();
         unread(i);
         return (char) i;
     }
 
+    @Override
     public char consume(){
         return (char) read();
     }
 
+    @Override
     public void pushBack(char c){
         unread(c);
     }
@@ -0,0 +1,18 @@
+package computil.runtime;
+
+public class ArrayObject extends Slots {
+
+    public ArrayObject(int size) {
+        super(size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size(); i++){
+            if (i > 0) sb.append(", ");
+            sb.append(get(i));
+        }
+        return sb.append("]").toString();
+    }
+}
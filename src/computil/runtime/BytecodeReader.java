@@ -0,0 +1,163 @@
+package computil.runtime;
+
+import computil.generation.LineNumberTable;
+import computil.generation.targets.rbt.Opcode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// reads the encodings that differ between the versions of the rbt format, see RabbitBytecodeV1 and RabbitBytecodeV2
+class BytecodeReader {
+
+    private final ByteBuffer buffer;
+
+    private final int major;
+
+    BytecodeReader(ByteBuffer buffer, int major) {
+        this.buffer = buffer;
+        this.major = major;
+    }
+
+    int position(){
+        return buffer.position();
+    }
+
+    void position(int position){
+        buffer.position(position);
+    }
+
+    int readByte(){
+        return buffer.get() & 0xFF;
+    }
+
+    int readInt(){
+        return buffer.getInt();
+    }
+
+    int readVarInt(){
+        return FunctionIndex.readVarInt(buffer);
+    }
+
+    int readCount(){
+        return major >= 2 ? readVarInt() : readByte();
+    }
+
+    int readLength(){
+        return major >= 2 ? readVarInt() : readInt();
+    }
+
+    String readString(){
+        byte[] bytes = new byte[readLength()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    Code readFunction(){
+        String name = readString();
+        int stackSize = readCount();
+        int locals = readCount();
+        int instructions = readLength();
+
+        int[] code = new int[instructions * 2];
+        int size = 0;
+        // offset of every instruction, jump-addresses are instruction indices in the file
+        int[] offsets = new int[instructions + 1];
+        int[] jumps = new int[8];
+        int jumpCount = 0;
+        LineNumberTable lines = new LineNumberTable();
+
+        for (int i = 0; i < instructions; i++){
+            offsets[i] = size;
+            int end = readByte();
+            end += buffer.position();
+            Opcode opcode = Opcode.of(readByte());
+            boolean wide = opcode == Opcode.WIDE;
+            if (wide) opcode = Opcode.of(readByte());
+            if (opcode == null)
+                throw new IllegalArgumentException("unknown opcode in " + name);
+
+            if (code.length < size + 8)
+                code = Arrays.copyOf(code, code.length * 2 + 8);
+            int start = size;
+            code[size++] = opcode.ordinal();
+            if (wide){
+                while (buffer.position() < end)
+                    code[size++] = readVarInt();
+            }
+            else {
+                int shortOperands = hasShortOperand(opcode) ? 1 : 0;
+                while (buffer.position() < end - 2 * shortOperands)
+                    code[size++] = buffer.get();
+                if (shortOperands == 1)
+                    code[size++] = buffer.getShort() & 0xFFFF;
+                // other byte operands are unsigned, only the signed ones keep the sign of their byte
+                for (int operand = 1; operand < size - start - shortOperands; operand++)
+                    if (!isSigned(opcode, operand))
+                        code[start + operand] &= 0xFF;
+            }
+            if (buffer.position() != end)
+                throw new IllegalArgumentException("malformed " + opcode + " in " + name);
+
+            if (opcode == Opcode.INVOKE_TEMPLATE && major < 2)
+                // version 1 has no call sites, -1 makes the interpreter look the method up on every call
+                code[size++] = -1;
+
+            if (opcode == Opcode.NEW_LINE){
+                lines.add(start, code[start + 1]);
+                size = start;
+            }
+            else if (isJump(opcode)){
+                if (jumpCount == jumps.length)
+                    jumps = Arrays.copyOf(jumps, jumps.length * 2);
+                jumps[jumpCount++] = size - 1;
+            }
+        }
+        offsets[instructions] = size;
+
+        for (int i = 0; i < jumpCount; i++){
+            int address = code[jumps[i]];
+            if (address < 0 || address > instructions)
+                throw new IllegalArgumentException("jump to " + address + " out of " + name);
+            code[jumps[i]] = offsets[address];
+        }
+
+        if (major >= 2){
+            int entries = readCount();
+            int pc = 0;
+            int line = 0;
+            for (int i = 0; i < entries; i++){
+                pc += readVarInt();
+                int delta = readVarInt();
+                line += (delta >>> 1) ^ -(delta & 1);
+                lines.add(offsets[Math.min(pc, instructions)], line);
+            }
+        }
+
+        int[] lineOffsets = new int[lines.size()];
+        int[] lineNumbers = new int[lines.size()];
+        int i = 0;
+        for (LineNumberTable.Entry entry : lines){
+            lineOffsets[i] = entry.pc();
+            lineNumbers[i++] = entry.line();
+        }
+        return new Code(name, stackSize, locals, Arrays.copyOf(code, size), lineOffsets, lineNumbers);
+    }
+
+    // whose last operand is encoded in 2 bytes
+    private static boolean hasShortOperand(Opcode opcode){
+        return isJump(opcode) || opcode == Opcode.NEW_LINE;
+    }
+
+    // whose last operand is a jump-address
+    static boolean isJump(Opcode opcode){
+        return switch (opcode){
+            case GOTO, BRANCH_ZERO, BRANCH_NOT_ZERO, CMP_BRANCH -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isSigned(Opcode opcode, int operand){
+        return (opcode == Opcode.PUSH_INT && operand == 1) || (opcode == Opcode.INC_LOCAL && operand == 2);
+    }
+}
@@ -0,0 +1,55 @@
+package computil.runtime;
+
+import java.util.Arrays;
+
+/*
+ * A function decoded for the interpreter. Instructions are laid out one after another in a single int array,
+ * each the ordinal of its opcode followed by its operands, and jump-addresses are offsets into that array.
+ * NEW_LINE is not part of the code, lines are looked up by offset instead.
+ */
+public class Code {
+
+    private final String name;
+
+    private final int stackSize;
+
+    private final int locals;
+
+    final int[] code;
+
+    // offsets where the line changes and the line from there on
+    private final int[] lineOffsets;
+    private final int[] lines;
+
+    Code(String name, int stackSize, int locals, int[] code, int[] lineOffsets, int[] lines) {
+        this.name = name;
+        this.stackSize = stackSize;
+        this.locals = locals;
+        this.code = code;
+        this.lineOffsets = lineOffsets;
+        this.lines = lines;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStackSize() {
+        return stackSize;
+    }
+
+    public int getLocals() {
+        return locals;
+    }
+
+    public int length(){
+        return code.length;
+    }
+
+    // the line of the instruction at the offset, -1 if unknown
+    public int lineAt(int offset){
+        int i = Arrays.binarySearch(lineOffsets, offset);
+        if (i < 0) i = -i - 2;
+        return i < 0 ? -1 : lines[i];
+    }
+}
@@ -0,0 +1,101 @@
+package computil.runtime;
+
+import computil.util.NameHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Locates the code of single functions in a file written by RabbitBytecodeV2 through its directory and
+ * function index, without decoding the pool or any other function.
+ */
+public final class FunctionIndex {
+
+    // the offset of the directory, behind the magic number, minor and major
+    private static final int DIRECTORY = 10;
+
+    private static final int ENTRY_SIZE = 12;
+
+    // the sections in the order of the directory
+    public static final int POOL = 0, FUNCTIONS = 1, INDEX = 2, STRUCTS = 3, SITES = 4;
+
+    private final ByteBuffer file;
+
+    private final int entries;
+
+    // the offset of the first entry
+    private final int start;
+
+    public FunctionIndex(ByteBuffer file) {
+        this.file = file.duplicate();
+        if (this.file.getShort(0) != (short) 0xDEAD || this.file.getInt(6) != 2)
+            throw new IllegalArgumentException("not a version 2 rbt file");
+        this.file.position(sectionOffset(INDEX));
+        this.entries = readVarInt(this.file);
+        this.start = this.file.position();
+    }
+
+    public static FunctionIndex map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return new FunctionIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public ByteBuffer getFile() {
+        return file.duplicate();
+    }
+
+    // the offset of one of the sections from the start of the file
+    public int sectionOffset(int section){
+        return file.getInt(DIRECTORY + 4 * section);
+    }
+
+    public int size(){
+        return entries;
+    }
+
+    // the code of the named function from its name to the end of its line table, null if there is none
+    public ByteBuffer find(String name){
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int hash = NameHash.of(name);
+        // the first entry with the hash, others with the same hash follow
+        int low = 0;
+        int high = entries;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (file.getInt(start + middle * ENTRY_SIZE) < hash) low = middle + 1;
+            else high = middle;
+        }
+        for (int i = low; i < entries && file.getInt(start + i * ENTRY_SIZE) == hash; i++){
+            int offset = file.getInt(start + i * ENTRY_SIZE + 4);
+            int length = file.getInt(start + i * ENTRY_SIZE + 8);
+            ByteBuffer code = file.slice(offset, length);
+            if (hasName(code, bytes))
+                return code;
+        }
+        return null;
+    }
+
+    private static boolean hasName(ByteBuffer code, byte[] name){
+        ByteBuffer buffer = code.duplicate();
+        if (readVarInt(buffer) != name.length || buffer.remaining() < name.length)
+            return false;
+        for (byte b : name)
+            if (buffer.get() != b)
+                return false;
+        return true;
+    }
+
+    static int readVarInt(ByteBuffer buffer){
+        int value = 0;
+        for (int shift = 0; ; shift += 7){
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package computil.runtime;
+
+public class Instance extends Slots {
+
+    private final StructType type;
+
+    public Instance(StructType type) {
+        super(type.getSize());
+        this.type = type;
+    }
+
+    public StructType getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return type + "@" + Integer.toHexString(hashCode());
+    }
+}
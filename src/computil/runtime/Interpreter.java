@@ -0,0 +1,445 @@
+package computil.runtime;
+
+import computil.generation.pool.PoolTag;
+import computil.generation.targets.rbt.Opcode;
+
+import java.util.Objects;
+
+import static computil.runtime.Slots.FLOAT;
+import static computil.runtime.Slots.NULL;
+
+/*
+ * Executes a loaded program. Every call gets a frame of two arrays sized from the locals and stack size the
+ * function declares, the locals first and the operand stack behind them. Arguments are passed on the operand
+ * stack of the callee, the last one at the bottom, as the parameters are stored by the function itself.
+ * Values follow the layout of Slots.
+ */
+public class Interpreter {
+
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private final Program program;
+
+    private final Natives natives;
+
+    // resolved on first use, by pool index
+    private final NativeFunction[] nativeFunctions;
+
+    // per call site the struct of the receiver last seen and the pool index of its method
+    private final StructType[] cachedTypes;
+    private final int[] cachedMethods;
+
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+
+    // the value returned by the last call
+    private long result;
+    private Object resultRef;
+
+    public Interpreter(Program program, Natives natives) {
+        this.program = Objects.requireNonNull(program);
+        this.natives = Objects.requireNonNull(natives);
+        this.nativeFunctions = new NativeFunction[program.getPoolSize()];
+        this.cachedTypes = new StructType[program.getCallSiteCount()];
+        this.cachedMethods = new int[program.getCallSiteCount()];
+    }
+
+    // template calls which found the method of their receiver in the cache of the call site
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    // template calls which had to look the method up, calls of version 1 files always do
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    // runs the entry point, returns what it returns, null for void
+    public Object run(){
+        Code main = program.getFunction(program.getEntryPoint());
+        try {
+            execute(main, new long[0], new Object[0], 0, 0);
+        } catch (StackOverflowError e){
+            throw new RabbitException("stack overflow", main.getName(), -1);
+        }
+        return Slots.box(result, resultRef);
+    }
+
+    private void execute(Code function, long[] callerValues, Object[] callerRefs, int args, int argc){
+        final int[] code = function.code;
+        final int base = function.getLocals();
+        final long[] v = new long[base + function.getStackSize()];
+        final Object[] r = new Object[v.length];
+        System.arraycopy(callerValues, args, v, base, argc);
+        System.arraycopy(callerRefs, args, r, base, argc);
+        int sp = base + argc;
+        int pc = 0;
+
+        try {
+            while (true) {
+                switch (OPCODES[code[pc]]) {
+                    case PUSH_NULL -> {
+                        v[sp] = 0;
+                        r[sp++] = NULL;
+                        pc += 1;
+                    }
+                    case PUSH_INT -> {
+                        v[sp] = code[pc + 1];
+                        r[sp++] = null;
+                        pc += 2;
+                    }
+                    case LOAD_CONST -> {
+                        v[sp] = program.values[code[pc + 1]];
+                        r[sp++] = program.refs[code[pc + 1]];
+                        pc += 2;
+                    }
+                    case LOAD_LOCAl -> {
+                        v[sp] = v[code[pc + 1]];
+                        r[sp++] = r[code[pc + 1]];
+                        pc += 2;
+                    }
+                    case STORE_LOCAL -> {
+                        v[code[pc + 1]] = v[--sp];
+                        r[code[pc + 1]] = r[sp];
+                        pc += 2;
+                    }
+                    case NEW -> {
+                        StructType type = struct(function, pc, code[pc + 1]);
+                        v[sp] = 0;
+                        r[sp++] = new Instance(type);
+                        pc += 2;
+                    }
+                    case FREE -> {
+                        r[--sp] = null;
+                        pc += 1;
+                    }
+                    case NULL_CHECK -> {
+                        if (r[sp - 1] == NULL)
+                            throw error("null check failed", function, pc);
+                        pc += 1;
+                    }
+                    case CHECK_CAST -> {
+                        // templates have no runtime type, only casts to structs are checked
+                        StructType type = program.getStruct(program.getName(code[pc + 1]));
+                        if (type != null && r[sp - 1] != NULL
+                                && !(r[sp - 1] instanceof Instance instance && instance.getType() == type))
+                            throw error("cannot cast " + r[sp - 1] + " to " + type, function, pc);
+                        pc += 2;
+                    }
+                    case I2F -> {
+                        v[sp - 1] = Float.floatToRawIntBits((int) v[sp - 1]);
+                        r[sp - 1] = FLOAT;
+                        pc += 1;
+                    }
+                    case F2I -> {
+                        v[sp - 1] = (int) Float.intBitsToFloat((int) v[sp - 1]);
+                        r[sp - 1] = null;
+                        pc += 1;
+                    }
+                    case MAKE_ARRAY -> {
+                        int size = code[pc + 1];
+                        ArrayObject array = new ArrayObject(size);
+                        sp -= size;
+                        System.arraycopy(v, sp, array.values, 0, size);
+                        System.arraycopy(r, sp, array.refs, 0, size);
+                        v[sp] = 0;
+                        r[sp++] = array;
+                        pc += 2;
+                    }
+                    case READ_ARRAY -> {
+                        ArrayObject array = (ArrayObject) reference(r[sp - 1], function, pc);
+                        v[sp - 1] = array.values[code[pc + 1]];
+                        r[sp - 1] = array.refs[code[pc + 1]];
+                        pc += 2;
+                    }
+                    case WRITE_ARRAY -> {
+                        ArrayObject array = (ArrayObject) reference(r[--sp], function, pc);
+                        array.values[code[pc + 1]] = v[--sp];
+                        array.refs[code[pc + 1]] = r[sp];
+                        pc += 2;
+                    }
+                    case GET_FIELD -> {
+                        Instance instance = (Instance) reference(r[sp - 1], function, pc);
+                        v[sp - 1] = instance.values[code[pc + 1]];
+                        r[sp - 1] = instance.refs[code[pc + 1]];
+                        pc += 2;
+                    }
+                    case PUT_FIELD -> {
+                        Instance instance = (Instance) reference(r[--sp], function, pc);
+                        instance.values[code[pc + 1]] = v[--sp];
+                        instance.refs[code[pc + 1]] = r[sp];
+                        pc += 2;
+                    }
+                    case INVOKE_VIRTUAL -> {
+                        int argCount = code[pc + 2];
+                        sp -= argCount;
+                        execute(program.getFunction(code[pc + 1]), v, r, sp, argCount);
+                        v[sp] = result;
+                        r[sp++] = resultRef;
+                        pc += 3;
+                    }
+                    case INVOKE_TEMPLATE -> {
+                        // the receiver is duplicated on top of the arguments to look up the method
+                        Instance receiver = (Instance) reference(r[--sp], function, pc);
+                        StructType type = receiver.getType();
+                        int site = code[pc + 3];
+                        int address;
+                        if (site >= 0 && cachedTypes[site] == type){
+                            address = cachedMethods[site];
+                            cacheHits++;
+                        }
+                        else {
+                            address = lookup(type, code[pc + 1], site, function, pc);
+                            cacheMisses++;
+                        }
+                        int argCount = code[pc + 2];
+                        sp -= argCount;
+                        invoke(address, v, r, sp, argCount, function, pc);
+                        v[sp] = result;
+                        r[sp++] = resultRef;
+                        pc += 4;
+                    }
+                    case INVOKE_NATIVE -> {
+                        int argCount = code[pc + 2];
+                        sp -= argCount;
+                        invokeNative(code[pc + 1], v, r, sp, argCount, function, pc);
+                        v[sp] = result;
+                        r[sp++] = resultRef;
+                        pc += 3;
+                    }
+                    case RETURN -> {
+                        result = v[sp - 1];
+                        resultRef = r[sp - 1];
+                        return;
+                    }
+                    case DUP -> {
+                        v[sp] = v[sp - 1];
+                        r[sp] = r[sp - 1];
+                        sp++;
+                        pc += 1;
+                    }
+                    case SWAP -> {
+                        long value = v[sp - 1];
+                        Object ref = r[sp - 1];
+                        v[sp - 1] = v[sp - 2];
+                        r[sp - 1] = r[sp - 2];
+                        v[sp - 2] = value;
+                        r[sp - 2] = ref;
+                        pc += 1;
+                    }
+                    case POP -> {
+                        r[--sp] = null;
+                        pc += 1;
+                    }
+                    case NOT -> {
+                        v[sp - 1] = v[sp - 1] == 0 ? 1 : 0;
+                        pc += 1;
+                    }
+                    case NEG -> {
+                        if (r[sp - 1] == FLOAT)
+                            v[sp - 1] = Float.floatToRawIntBits(-Float.intBitsToFloat((int) v[sp - 1]));
+                        else v[sp - 1] = -(int) v[sp - 1];
+                        pc += 1;
+                    }
+                    case ADD_I -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] + (int) v[sp];
+                        pc += 1;
+                    }
+                    case SUB_I -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] - (int) v[sp];
+                        pc += 1;
+                    }
+                    case MUL_I -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] * (int) v[sp];
+                        pc += 1;
+                    }
+                    case MOD -> {
+                        sp--;
+                        if ((int) v[sp] == 0)
+                            throw error("modulo by zero", function, pc);
+                        v[sp - 1] = (int) v[sp - 1] % (int) v[sp];
+                        pc += 1;
+                    }
+                    case AND -> {
+                        sp--;
+                        v[sp - 1] = v[sp - 1] != 0 && v[sp] != 0 ? 1 : 0;
+                        pc += 1;
+                    }
+                    case OR -> {
+                        sp--;
+                        v[sp - 1] = v[sp - 1] != 0 || v[sp] != 0 ? 1 : 0;
+                        pc += 1;
+                    }
+                    case AND_BIT -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] & (int) v[sp];
+                        pc += 1;
+                    }
+                    case OR_BIT -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] | (int) v[sp];
+                        pc += 1;
+                    }
+                    case XOR -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] ^ (int) v[sp];
+                        pc += 1;
+                    }
+                    case SHIFT_AL -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] << (int) v[sp];
+                        pc += 1;
+                    }
+                    case SHIFT_AR -> {
+                        sp--;
+                        v[sp - 1] = (int) v[sp - 1] >> (int) v[sp];
+                        pc += 1;
+                    }
+                    case ADD_F, SUB_F, MUL_F, DIV -> {
+                        sp--;
+                        float left = asFloat(v[sp - 1], r[sp - 1]);
+                        float right = asFloat(v[sp], r[sp]);
+                        float value = switch (OPCODES[code[pc]]) {
+                            case ADD_F -> left + right;
+                            case SUB_F -> left - right;
+                            case MUL_F -> left * right;
+                            default -> left / right;
+                        };
+                        v[sp - 1] = Float.floatToRawIntBits(value);
+                        r[sp - 1] = FLOAT;
+                        pc += 1;
+                    }
+                    case EQUALS, NOT_EQUALS, LESS, GREATER, LESS_EQ, GREATER_EQ -> {
+                        sp--;
+                        boolean value = compare(OPCODES[code[pc]], v[sp - 1], r[sp - 1], v[sp], r[sp]);
+                        v[sp - 1] = value ? 1 : 0;
+                        r[sp - 1] = null;
+                        pc += 1;
+                    }
+                    case GOTO -> pc = code[pc + 1];
+                    case BRANCH_NOT_ZERO -> pc = v[--sp] != 0 ? code[pc + 1] : pc + 2;
+                    case BRANCH_ZERO -> pc = v[--sp] == 0 ? code[pc + 1] : pc + 2;
+                    case LOAD2_ADD_I -> {
+                        v[sp] = (int) v[code[pc + 1]] + (int) v[code[pc + 2]];
+                        r[sp++] = null;
+                        pc += 3;
+                    }
+                    case LOAD_GET_FIELD -> {
+                        Instance instance = (Instance) reference(r[code[pc + 1]], function, pc);
+                        v[sp] = instance.values[code[pc + 2]];
+                        r[sp++] = instance.refs[code[pc + 2]];
+                        pc += 3;
+                    }
+                    case CMP_BRANCH -> {
+                        sp -= 2;
+                        boolean value = compare(OPCODES[code[pc + 1]], v[sp], r[sp], v[sp + 1], r[sp + 1]);
+                        pc = value == (code[pc + 2] != 0) ? code[pc + 3] : pc + 4;
+                    }
+                    case INC_LOCAL -> {
+                        v[code[pc + 1]] = (int) v[code[pc + 1]] + code[pc + 2];
+                        r[code[pc + 1]] = null;
+                        pc += 3;
+                    }
+                    default -> throw error("unexpected " + OPCODES[code[pc]], function, pc);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | ClassCastException e){
+            throw error("malformed code, " + e.getMessage(), function, pc);
+        }
+    }
+
+    private void invoke(int address, long[] v, Object[] r, int args, int argc, Code caller, int pc){
+        if (program.getTag(address) == PoolTag.NATIVE_FUNCTION)
+            invokeNative(address, v, r, args, argc, caller, pc);
+        else execute(program.getFunction(address), v, r, args, argc);
+    }
+
+    // the method of a template call on a miss of its cache, which then holds the struct of the receiver
+    private int lookup(StructType type, int nameAddress, int site, Code function, int pc){
+        String name = program.getName(nameAddress);
+        int address = site >= 0
+                ? type.method(name, program.getCallSiteHash(site))
+                : type.method(name);
+        if (address < 0)
+            throw error(type + " has no method " + name, function, pc);
+        if (site >= 0){
+            cachedTypes[site] = type;
+            cachedMethods[site] = address;
+        }
+        return address;
+    }
+
+    private void invokeNative(int address, long[] v, Object[] r, int args, int argc, Code caller, int pc){
+        NativeFunction function = nativeFunctions[address];
+        if (function == null){
+            function = natives.get(program.getName(address));
+            if (function == null)
+                throw error("no native function " + program.getName(address), caller, pc);
+            nativeFunctions[address] = function;
+        }
+        // the first argument is on top
+        Object[] arguments = new Object[argc];
+        for (int i = 0; i < argc; i++)
+            arguments[i] = Slots.box(v[args + argc - 1 - i], r[args + argc - 1 - i]);
+        Object value = function.invoke(arguments);
+        result = Slots.unboxValue(value);
+        resultRef = Slots.unboxRef(value);
+    }
+
+    private StructType struct(Code function, int pc, int address){
+        StructType type = program.getStruct(program.getName(address));
+        if (type == null)
+            throw error("no struct " + program.getName(address), function, pc);
+        return type;
+    }
+
+    private static Object reference(Object ref, Code function, int pc){
+        if (ref == NULL)
+            throw error("null reference", function, pc);
+        return ref;
+    }
+
+    private static float asFloat(long value, Object ref){
+        return ref == FLOAT ? Float.intBitsToFloat((int) value) : (int) value;
+    }
+
+    // compares as floats if either is one, as references if either is one, as ints otherwise
+    private static boolean compare(Opcode comparison, long left, Object leftRef, long right, Object rightRef){
+        if (leftRef == FLOAT || rightRef == FLOAT)
+            return compare(comparison, asFloat(left, leftRef), asFloat(right, rightRef));
+        int order;
+        if (leftRef != null || rightRef != null)
+            order = Objects.equals(leftRef, rightRef) ? 0 : 1;
+        else order = Long.compare(left, right);
+
+        return switch (comparison){
+            case EQUALS -> order == 0;
+            case NOT_EQUALS -> order != 0;
+            case LESS -> order < 0;
+            case GREATER -> order > 0;
+            case LESS_EQ -> order <= 0;
+            case GREATER_EQ -> order >= 0;
+            default -> throw new IllegalArgumentException(comparison + " is no comparison");
+        };
+    }
+
+    // as the operators do, so NaN is unequal to everything and 0.0 equals -0.0
+    private static boolean compare(Opcode comparison, float left, float right){
+        return switch (comparison){
+            case EQUALS -> left == right;
+            case NOT_EQUALS -> left != right;
+            case LESS -> left < right;
+            case GREATER -> left > right;
+            case LESS_EQ -> left <= right;
+            case GREATER_EQ -> left >= right;
+            default -> throw new IllegalArgumentException(comparison + " is no comparison");
+        };
+    }
+
+    private static RabbitException error(String message, Code function, int pc){
+        return new RabbitException(message, function.getName(), function.lineAt(pc));
+    }
+}
@@ -0,0 +1,9 @@
+package computil.runtime;
+
+// arguments and result are Integer, Float, String, Instance, ArrayObject or null, bools are passed as Integer
+@FunctionalInterface
+public interface NativeFunction {
+
+    Object invoke(Object[] args);
+
+}
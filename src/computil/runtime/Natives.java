@@ -0,0 +1,28 @@
+package computil.runtime;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+// the functions INVOKE_NATIVE calls, by the name of their pool constant
+public class Natives {
+
+    private final Map<String, NativeFunction> functions = new HashMap<>();
+
+    public Natives register(String name, NativeFunction function){
+        functions.put(name, function);
+        return this;
+    }
+
+    public NativeFunction get(String name){
+        return functions.get(name);
+    }
+
+    // the print functions the example programs declare
+    public static Natives standard(PrintStream out){
+        return new Natives()
+                .register("println", args -> { out.println(args[0]); return null; })
+                .register("printi", args -> { out.println(args[0]); return null; })
+                .register("printf", args -> { out.println(args[0]); return null; });
+    }
+}
@@ -0,0 +1,204 @@
+package computil.runtime;
+
+import computil.generation.pool.PoolTag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * A loaded rbt file. Files of version 1 are decoded at once. Of version 2 only the pool and the structs
+ * are, functions are looked up in the function index and decoded when they are first called.
+ */
+public class Program {
+
+    private final int minor;
+
+    private final int major;
+
+    private final int entryPoint;
+
+    final PoolTag[] tags;
+
+    // the constants as LOAD_CONST pushes them, the name of function, struct and UTF8 constants in refs
+    final long[] values;
+    final Object[] refs;
+
+    private final Code[] functions;
+
+    private final Map<String, StructType> structs = new HashMap<>();
+
+    // version 1 decodes every function up front
+    private final Map<String, Code> decoded = new HashMap<>();
+
+    private final FunctionIndex index;
+
+    // the NameHash of the method of every call site, version 1 has none
+    private final int[] siteHashes;
+
+    private Program(ByteBuffer file) {
+        file = file.duplicate();
+        if ((file.getShort(0) & 0xFFFF) != 0xDEAD)
+            throw new IllegalArgumentException("not an rbt file");
+        minor = file.getInt(2);
+        major = file.getInt(6);
+        if (major != 1 && major != 2)
+            throw new IllegalArgumentException("unsupported major version " + major);
+
+        BytecodeReader reader = new BytecodeReader(file, major);
+        reader.position(major >= 2 ? 10 + 20 : 10);
+        entryPoint = reader.readCount();
+
+        int constants = reader.readCount();
+        tags = new PoolTag[constants];
+        values = new long[constants];
+        refs = new Object[constants];
+        functions = new Code[constants];
+        for (int i = 0; i < constants; i++)
+            readConstant(reader, i);
+
+        if (major >= 2){
+            index = new FunctionIndex(file);
+            reader.position(index.sectionOffset(FunctionIndex.STRUCTS));
+        }
+        else {
+            index = null;
+            int count = reader.readCount();
+            for (int i = 0; i < count; i++){
+                Code code = reader.readFunction();
+                decoded.put(code.getName(), code);
+            }
+        }
+
+        int count = reader.readCount();
+        for (int i = 0; i < count; i++){
+            StructType type = major >= 2 ? readStruct(reader) : readStructV1(reader);
+            structs.put(type.getName(), type);
+        }
+
+        if (major >= 2){
+            reader.position(index.sectionOffset(FunctionIndex.SITES));
+            siteHashes = new int[reader.readCount()];
+            for (int i = 0; i < siteHashes.length; i++){
+                siteHashes[i] = reader.readInt();
+                reader.readCount();
+            }
+        }
+        else siteHashes = new int[0];
+    }
+
+    private static StructType readStructV1(BytecodeReader reader){
+        String name = reader.readString();
+        int size = reader.readCount();
+        int methodCount = reader.readCount();
+        Map<String, Integer> methods = new LinkedHashMap<>();
+        for (int m = 0; m < methodCount; m++)
+            methods.put(reader.readString(), reader.readCount());
+        return new StructType(name, size, methods);
+    }
+
+    // the method table is taken as it is written, see RabbitBytecodeV2.visitStruct
+    private static StructType readStruct(BytecodeReader reader){
+        String name = reader.readString();
+        int size = reader.readCount();
+        reader.readCount();
+        int capacity = reader.readCount();
+        int[] hashes = new int[capacity];
+        String[] names = new String[capacity];
+        int[] addresses = new int[capacity];
+        for (int slot = 0; slot < capacity; slot++){
+            addresses[slot] = reader.readCount() - 1;
+            if (addresses[slot] < 0) continue;
+            hashes[slot] = reader.readInt();
+            names[slot] = reader.readString();
+        }
+        return new StructType(name, size, hashes, names, addresses);
+    }
+
+    public static Program load(ByteBuffer file){
+        return new Program(file);
+    }
+
+    public static Program load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return new Program(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private void readConstant(BytecodeReader reader, int address){
+        PoolTag tag = PoolTag.values()[reader.readByte()];
+        tags[address] = tag;
+        switch (tag){
+            case INTEGER -> values[address] = reader.readInt();
+            case FLOAT -> {
+                values[address] = reader.readInt();
+                refs[address] = Slots.FLOAT;
+            }
+            default -> refs[address] = reader.readString();
+        }
+    }
+
+    public int getMinor() {
+        return minor;
+    }
+
+    public int getMajor() {
+        return major;
+    }
+
+    public int getEntryPoint() {
+        return entryPoint;
+    }
+
+    public int getPoolSize(){
+        return tags.length;
+    }
+
+    public PoolTag getTag(int address){
+        return tags[address];
+    }
+
+    // the name of a function, struct or UTF8 constant
+    public String getName(int address){
+        return (String) refs[address];
+    }
+
+    public int getCallSiteCount(){
+        return siteHashes.length;
+    }
+
+    // the NameHash of the method a call site invokes
+    int getCallSiteHash(int site){
+        return siteHashes[site];
+    }
+
+    public StructType getStruct(String name){
+        return structs.get(name);
+    }
+
+    // the code of the virtual function constant at the address
+    public Code getFunction(int address){
+        Code code = functions[address];
+        if (code == null)
+            code = functions[address] = decode(getName(address));
+        return code;
+    }
+
+    private Code decode(String name){
+        if (index == null){
+            Code code = decoded.get(name);
+            if (code == null)
+                throw new IllegalStateException("no function " + name);
+            return code;
+        }
+        ByteBuffer bytes = index.find(name);
+        if (bytes == null)
+            throw new IllegalStateException("no function " + name);
+        return new BytecodeReader(bytes, major).readFunction();
+    }
+}
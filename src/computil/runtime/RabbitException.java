@@ -0,0 +1,26 @@
+package computil.runtime;
+
+// a failure of the running program, such as a failed null check or cast
+public class RabbitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String function;
+
+    private final int line;
+
+    public RabbitException(String message, String function, int line) {
+        super(message + " in " + function + (line >= 0 ? " at line " + line : ""));
+        this.function = function;
+        this.line = line;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    // -1 if the program was compiled without line numbers
+    public int getLine() {
+        return line;
+    }
+}
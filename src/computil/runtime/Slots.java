@@ -0,0 +1,62 @@
+package computil.runtime;
+
+/*
+ * Storage for values of any type, the layout of frames, struct instances and arrays. An int or bool lives
+ * in values alone, with no reference beside it. A float keeps its bits in values and is tagged with FLOAT
+ * in refs, null is tagged with NULL. Any other reference, a string, instance or array, lives in refs.
+ */
+public class Slots {
+
+    static final Object FLOAT = new Object();
+
+    static final Object NULL = new Object();
+
+    final long[] values;
+
+    final Object[] refs;
+
+    Slots(int size) {
+        this.values = new long[size];
+        this.refs = new Object[size];
+    }
+
+    public int size(){
+        return values.length;
+    }
+
+    // the value at the index as Integer, Float, String, Instance, ArrayObject or null
+    public Object get(int index){
+        return box(values[index], refs[index]);
+    }
+
+    public void set(int index, Object value){
+        values[index] = unboxValue(value);
+        refs[index] = unboxRef(value);
+    }
+
+    static Object box(long value, Object ref){
+        if (ref == null) return (int) value;
+        if (ref == FLOAT) return Float.intBitsToFloat((int) value);
+        if (ref == NULL) return null;
+        return ref;
+    }
+
+    static long unboxValue(Object value){
+        return switch (value){
+            case Integer i -> i;
+            case Boolean b -> b ? 1 : 0;
+            case Float f -> Float.floatToRawIntBits(f);
+            case null, default -> 0;
+        };
+    }
+
+    static Object unboxRef(Object value){
+        return switch (value){
+            case Integer i -> null;
+            case Boolean b -> null;
+            case Float f -> FLOAT;
+            case null -> NULL;
+            default -> value;
+        };
+    }
+}
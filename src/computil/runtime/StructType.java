@@ -0,0 +1,86 @@
+package computil.runtime;
+
+import computil.util.NameHash;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class StructType {
+
+    private final String name;
+
+    private final int size;
+
+    // method name to the pool index of the implementing function
+    private final Map<String, Integer> methods;
+
+    // an open addressing table of the methods by their NameHash, as RabbitBytecodeV2 writes it
+    private final int[] hashes;
+    private final String[] names;
+    private final int[] addresses;
+
+    public StructType(String name, int size, Map<String, Integer> methods) {
+        this.name = name;
+        this.size = size;
+        this.methods = methods;
+        int capacity = methods.isEmpty() ? 0 : Integer.highestOneBit(methods.size() * 4 - 1);
+        this.hashes = new int[capacity];
+        this.names = new String[capacity];
+        this.addresses = new int[capacity];
+        for (Map.Entry<String, Integer> method : methods.entrySet()){
+            int hash = NameHash.of(method.getKey());
+            int slot = hash & (capacity - 1);
+            while (names[slot] != null)
+                slot = (slot + 1) & (capacity - 1);
+            hashes[slot] = hash;
+            names[slot] = method.getKey();
+            addresses[slot] = method.getValue();
+        }
+    }
+
+    StructType(String name, int size, int[] hashes, String[] names, int[] addresses) {
+        this.name = name;
+        this.size = size;
+        this.hashes = hashes;
+        this.names = names;
+        this.addresses = addresses;
+        this.methods = new LinkedHashMap<>();
+        for (int slot = 0; slot < names.length; slot++)
+            if (names[slot] != null)
+                methods.put(names[slot], addresses[slot]);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Map<String, Integer> getMethods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    // the pool index of the method, -1 if the struct does not implement it, for call sites without a hash
+    int method(String name){
+        Integer address = methods.get(name);
+        return address == null ? -1 : address;
+    }
+
+    // as method(name), with the NameHash of the name as a version 2 call site has it
+    int method(String name, int hash){
+        if (names.length == 0) return -1;
+        int mask = names.length - 1;
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask)
+            if (hashes[slot] == hash && names[slot].equals(name))
+                return addresses[slot];
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
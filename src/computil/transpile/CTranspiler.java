@@ -2,16 +2,15 @@ package computil.transpile;
 
 import computil.check.TypeChecker;
 import computil.tree.*;
+import computil.util.OutputBuffer;
 import computil.util.TreeScanner;
 
-import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class CTranspiler extends TreeScanner<Void, Void> {
 
-    private final OutputStream out;
+    private final OutputBuffer out;
 
     private boolean inGlobalScope = true;
 
@@ -19,15 +18,11 @@ public class CTranspiler extends TreeScanner<Void, Void> {
 
 
     public CTranspiler(OutputStream out) {
-        this.out = out;
+        this.out = new OutputBuffer(out);
     }
 
     private void write(String s){
-        try {
-            out.write(s.getBytes(StandardCharsets.UTF_8));
-        }catch (IOException e){
-            throw new RuntimeException(e);
-        }
+        out.writeUTF8(s);
     }
 
     @Override
@@ -43,6 +38,7 @@ public class CTranspiler extends TreeScanner<Void, Void> {
         scan(rootTree.getStructs(), null);
         scan(rootTree.getCallables(), null);
         inGlobalScope = false;
+        out.flush();
         return null;
     }
 
@@ -1,8 +1,17 @@
 package computil.tree;
 
+import computil.util.TreeVisitor;
+
 public interface ImportTree extends Tree {
 
+    // the file of the imported module, null until the import is resolved
     String getAbsolutePath();
 
+    // the name as written, parts separated by '.'
     String getImportedName();
+
+    @Override
+    default <P, R> R accept(TreeVisitor<P, R> visitor, P p) {
+        return visitor.visitImportTree(this, p);
+    }
 }
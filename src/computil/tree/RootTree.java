@@ -6,6 +6,8 @@ import java.util.List;
 
 public interface RootTree extends Tree {
 
+    List<ImportTree> getImports();
+
     List<StructTree> getStructs();
 
     List<CallableTree> getCallables();
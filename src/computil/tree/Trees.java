@@ -1,17 +1,20 @@
 package computil.tree;
 
 import computil.util.Location;
+import computil.util.TreeScanner;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public final class Trees {
 
     private Trees(){}
 
     private static abstract class AbstractTree implements Tree {
-        private final Location location;
+        // changed only by move
+        private Location location;
         private AbstractTree(Location location) {
             this.location = location;
         }
@@ -20,7 +23,41 @@ public final class Trees {
         }
     }
 
+    // shifts the locations of the tree and everything in it, for a tree whose source text moved
+    public static void move(Tree tree, int charDelta, int lineDelta){
+        if (charDelta != 0 || lineDelta != 0)
+            new Mover(charDelta, lineDelta).scan(tree, null);
+    }
+
+    private static final class Mover extends TreeScanner<Void, Void> {
+        private final int charDelta;
+        private final int lineDelta;
+
+        private Mover(int charDelta, int lineDelta) {
+            this.charDelta = charDelta;
+            this.lineDelta = lineDelta;
+        }
+
+        @Override
+        public Void scan(Tree tree, Void unused) {
+            if (tree instanceof AbstractTree moved && moved.location != null){
+                Location location = moved.location;
+                moved.location = new Location(location.startPos() + charDelta, location.endPos() + charDelta,
+                        location.line() + lineDelta);
+            }
+            return super.scan(tree, unused);
+        }
+
+        // the scanner leaves out the operand
+        @Override
+        public Void visitCallMethodTree(CallMethodTree callMethodTree, Void unused) {
+            scan(callMethodTree.getOperand(), null);
+            return super.visitCallMethodTree(callMethodTree, unused);
+        }
+    }
+
     public static class BasicRootTree extends AbstractTree implements RootTree {
+        public final List<ImportTree> imports = new ArrayList<>();
         public final List<StructTree> structs = new ArrayList<>();
         public final List<CallableTree> callables = new ArrayList<>();
         public final List<TemplateTree> templates = new ArrayList<>();
@@ -28,6 +65,9 @@ public final class Trees {
         public BasicRootTree() {
             super(null);
         }
+        public List<ImportTree> getImports() {
+            return imports;
+        }
         public List<StructTree> getStructs() {
             return structs;
         }
@@ -42,6 +82,21 @@ public final class Trees {
         }
     }
 
+    public static class BasicImportTree extends AbstractTree implements ImportTree {
+        public String name;
+        public String absolutePath;
+        public BasicImportTree(String name, Location location) {
+            super(location);
+            this.name = name;
+        }
+        public String getAbsolutePath() {
+            return absolutePath;
+        }
+        public String getImportedName() {
+            return name;
+        }
+    }
+
     public static class BasicTypeTree extends AbstractTree implements TypeTree {
         public String name;
         public boolean isNullable = false;
@@ -175,6 +230,42 @@ public final class Trees {
         }
     }
 
+    // a function whose body is parsed on first access
+    public static class LazyFunctionTree extends AbstractTree implements FunctionTree {
+        private final String name;
+        private final List<ParameterTree> parameters;
+        private final TypeTree returnType;
+        private BlockTree body;
+        // parses the body on first access, null once the body is materialized
+        private Supplier<BlockTree> bodyParser;
+        public LazyFunctionTree(FunctionTree header, Supplier<BlockTree> bodyParser) {
+            super(header.getLocation());
+            this.name = header.getName();
+            this.parameters = header.getParameters();
+            this.returnType = header.getReturnType();
+            this.bodyParser = bodyParser;
+        }
+        public String getName() {
+            return name;
+        }
+        public List<ParameterTree> getParameters() {
+            return parameters;
+        }
+        public TypeTree getReturnType() {
+            return returnType;
+        }
+        public synchronized boolean isBodyParsed() {
+            return bodyParser == null;
+        }
+        public synchronized BlockTree getBody() {
+            if (bodyParser != null) {
+                body = bodyParser.get();
+                bodyParser = null;
+            }
+            return body;
+        }
+    }
+
     public static class BasicNativeFunctionTree extends AbstractTree implements NativeFunctionTree {
         public String name;
         public List<ParameterTree> parameters = new ArrayList<>();
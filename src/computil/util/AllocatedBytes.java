@@ -0,0 +1,26 @@
+package computil.util;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+
+// what the current thread allocated on the heap so far, for statistics
+public final class AllocatedBytes {
+
+    // null where the jvm does not count allocations per thread
+    private static final ThreadMXBean THREADS = threads();
+
+    private AllocatedBytes() {}
+
+    // -1 where the jvm does not count them
+    public static long ofCurrentThread(){
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static ThreadMXBean threads(){
+        if (ManagementFactory.getThreadMXBean() instanceof ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+            return threads;
+        return null;
+    }
+}
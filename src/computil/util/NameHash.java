@@ -0,0 +1,19 @@
+package computil.util;
+
+import java.nio.charset.StandardCharsets;
+
+// the hash rbt files of version 2 find functions and methods by, written by the compiler and used by the runtime
+public final class NameHash {
+
+    private NameHash() {}
+
+    // 32 bit FNV-1a of the UTF-8 encoded name
+    public static int of(String name){
+        int hash = 0x811C9DC5;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)){
+            hash ^= b & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
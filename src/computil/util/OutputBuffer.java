@@ -0,0 +1,137 @@
+package computil.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Collects the output of a target in memory, so the underlying stream sees a single write, which goes
+ * through the file's channel for file streams. Failures surface from flush instead of being dropped
+ * byte by byte, as an UncheckedIOException since targets and visitors cannot throw checked ones.
+ */
+public class OutputBuffer {
+
+    private final OutputStream out;
+
+    private byte[] buffer;
+
+    private int size = 0;
+
+    public OutputBuffer(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public OutputBuffer(OutputStream out, int capacity) {
+        this.out = out;
+        this.buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void write(int b){
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+    }
+
+    public void write(byte[] b){
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int offset, int length){
+        ensureCapacity(length);
+        System.arraycopy(b, offset, buffer, size, length);
+        size += length;
+    }
+
+    // big endian
+    public void writeInt(int value){
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    // overwrites 4 bytes written before, big endian
+    public void putInt(int position, int value){
+        if (position < 0 || position + 4 > size)
+            throw new IndexOutOfBoundsException(position);
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    public void writeShort(int value){
+        ensureCapacity(2);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    // unsigned LEB128
+    public void writeVarInt(int value){
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0){
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    public static int varIntSize(int value){
+        int bytes = 1;
+        while ((value & ~0x7F) != 0){
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    public void writeUTF8(String s){
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++){
+            char c = s.charAt(i);
+            if (c >= 0x80){
+                // only text beyond ASCII needs an encoder, nothing has been counted yet
+                write(s.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer[size + i] = (byte) c;
+        }
+        size += length;
+    }
+
+    public void flush(){
+        try {
+            if (out instanceof FileOutputStream file)
+                writeTo(file.getChannel());
+            else {
+                out.write(buffer, 0, size);
+                out.flush();
+            }
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        } finally {
+            size = 0;
+        }
+    }
+
+    private void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, size);
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+
+    private void ensureCapacity(int additional){
+        if (size + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+    }
+}
@@ -44,13 +44,19 @@ public abstract class TreeScanner<P, R> implements TreeVisitor<P, R> {
 
     @Override
     public R visitRootTree(RootTree rootTree, P p) {
-        R r = scan(rootTree.getStructs(), p);
+        R r = scan(rootTree.getImports(), p);
+        r = scanSelective(rootTree.getStructs(), p, r);
         r = scanSelective(rootTree.getTemplates(), p, r);
         r = scanSelective(rootTree.getImpls(), p, r);
         r = scanSelective(rootTree.getCallables(), p, r);
         return r;
     }
 
+    @Override
+    public R visitImportTree(ImportTree importTree, P p) {
+        return defaultValue;
+    }
+
     @Override
     public R visitStructTree(StructTree structTree, P p) {
         return scan(structTree.getFields(), p);
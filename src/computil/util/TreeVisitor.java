@@ -6,6 +6,8 @@ public interface TreeVisitor<P, R> {
 
     R visitRootTree(RootTree rootTree, P p);
 
+    R visitImportTree(ImportTree importTree, P p);
+
     R visitStructTree(StructTree structTree, P p);
 
     R visitFieldTree(FieldTree fieldTree, P p);
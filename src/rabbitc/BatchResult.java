@@ -0,0 +1,32 @@
+package rabbitc;
+
+import computil.diags.Diagnosis;
+import computil.diags.Error;
+import computil.diags.Logger;
+import computil.diags.Warning;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// what RabbitCompiler.runAll did with each of its inputs, in the order of the inputs
+public record BatchResult(List<File> files) {
+
+    // the diagnostics and statistics of one input, its output is only written if the exit value is 0
+    public record File(Path input, Path output, int exit, List<Diagnosis> diagnoses, CompileStatistics statistics) {
+
+        public void replay(Logger logger){
+            for (Diagnosis diagnosis : diagnoses){
+                if (diagnosis instanceof Error error) logger.error(error);
+                else logger.warning((Warning) diagnosis);
+            }
+        }
+    }
+
+    // -1 if any of the files failed, 0 otherwise
+    public int exit(){
+        for (File file : files)
+            if (file.exit() != 0)
+                return -1;
+        return 0;
+    }
+}
@@ -0,0 +1,179 @@
+package rabbitc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/*
+ * Compiled outputs on disk, keyed by the SHA-256 of the compiler version, the target, the flags which
+ * change the output and the source, so compiling an unchanged file again is a hash and a copy. An entry is
+ * a file named by its key, under a directory named by the first two digits of the key. Entries are written
+ * to a temporary file and moved in place, so compilers sharing the directory never see half an entry.
+ *
+ * The modification time of an entry is the time it was last used. Once the entries take more than the
+ * limit, the least recently used are deleted until they take at most three quarters of it.
+ */
+public class BuildCache {
+
+    private static final String SUFFIX = ".rbtc";
+
+    private final Path directory;
+
+    private final long limit;
+
+    // the size of all entries, as far as this cache knows of them
+    private long size;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public BuildCache(Path directory, long limit) throws IOException {
+        this.directory = directory;
+        this.limit = limit;
+        Files.createDirectories(directory);
+        long size = 0;
+        for (Entry entry : entries())
+            size += entry.size();
+        this.size = size;
+    }
+
+    // the target is the kind of output, like run or dis, flags are compared regardless of their order and those
+    // which only print reports are left out
+    public String key(String target, byte[] source, String... args){
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+        update(digest, RabbitCompiler.VERSION);
+        update(digest, target);
+        for (String arg : new TreeSet<>(List.of(args)))
+            if (!RabbitCompiler.isReportFlag(arg))
+                update(digest, arg);
+        digest.update(source);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // the length and content of each string, so no two lists of them hash the same bytes
+    private static void update(MessageDigest digest, String value){
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).flip());
+        digest.update(bytes);
+    }
+
+    // copies the entry to out, false if there is none
+    public boolean load(String key, OutputStream out) throws IOException {
+        Path entry = path(key);
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.copy(entry, out);
+        } catch (NoSuchFileException e){
+            // also if another compiler evicted it in the meantime
+            count(false);
+            return false;
+        }
+        count(true);
+        return true;
+    }
+
+    public void store(String key, byte[] output) throws IOException {
+        Path entry = path(key);
+        Files.createDirectories(entry.getParent());
+        Path temporary = Files.createTempFile(entry.getParent(), key, ".tmp");
+        try {
+            Files.write(temporary, output);
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        if (grow(output.length))
+            evict();
+    }
+
+    private Path path(String key){
+        return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private synchronized void count(boolean hit){
+        if (hit) hits++;
+        else misses++;
+    }
+
+    // whether the entries take more than the limit now
+    private synchronized boolean grow(long bytes){
+        size += bytes;
+        return size > limit;
+    }
+
+    private synchronized void evict() throws IOException {
+        List<Entry> entries = entries();
+        entries.sort((a, b) -> a.used().compareTo(b.used()));
+        long size = 0;
+        for (Entry entry : entries)
+            size += entry.size();
+        for (Entry entry : entries){
+            if (size <= limit / 4 * 3) break;
+            if (Files.deleteIfExists(entry.path())){
+                size -= entry.size();
+                evictions++;
+            }
+        }
+        this.size = size;
+    }
+
+    private record Entry(Path path, long size, FileTime used) {}
+
+    private List<Entry> entries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory, 2)){
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(file -> {
+                try {
+                    entries.add(new Entry(file, Files.size(file), Files.getLastModifiedTime(file)));
+                } catch (NoSuchFileException e){
+                    // evicted by another compiler
+                } catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+        return entries;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized void report(PrintStream out){
+        long requests = hits + misses;
+        out.printf("build cache: %d hits, %d misses (%.1f%% hit), %d evicted, %d bytes%n",
+                hits, misses, requests == 0 ? 0.0 : 100.0 * hits / requests, evictions, size);
+    }
+}
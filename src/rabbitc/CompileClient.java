@@ -0,0 +1,76 @@
+package rabbitc;
+
+import computil.diags.Diagnosis;
+import computil.diags.Error;
+import computil.diags.Logger;
+import computil.diags.Warning;
+import computil.util.Location;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+// compiles through a running CompileServer, with the same results as RabbitCompiler in this jvm
+public class CompileClient {
+
+    private final UnixDomainSocketAddress server;
+
+    public CompileClient(Path socket) {
+        this.server = UnixDomainSocketAddress.of(socket);
+    }
+
+    public int run(Path in, OutputStream out, Logger logger, String... args) throws IOException {
+        return request(CompileServer.RUN, in, out, logger, args);
+    }
+
+    public int dis(Path in, OutputStream out, Logger logger, String... args) throws IOException {
+        return request(CompileServer.DIS, in, out, logger, args);
+    }
+
+    public int transpile(Path in, OutputStream out, Logger logger, String... args) throws IOException {
+        return request(CompileServer.TRANSPILE, in, out, logger, args);
+    }
+
+    // lets the server finish once this request is answered
+    public void stop() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)){
+            channel.connect(server);
+            DataOutputStream request = new DataOutputStream(Channels.newOutputStream(channel));
+            request.writeUTF(CompileServer.STOP);
+            request.flush();
+            new DataInputStream(Channels.newInputStream(channel)).readInt();
+        }
+    }
+
+    private int request(String command, Path in, OutputStream out, Logger logger, String[] args) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)){
+            channel.connect(server);
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            // the server resolves paths against its own working directory
+            request.writeUTF(command);
+            request.writeUTF(in.toAbsolutePath().toString());
+            request.writeInt(args.length);
+            for (String arg : args)
+                request.writeUTF(arg);
+            request.flush();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int exit = response.readInt();
+            int diagnoses = response.readInt();
+            for (int i = 0; i < diagnoses; i++){
+                Diagnosis.Kind kind = Diagnosis.Kind.values()[response.readByte()];
+                Location location = new Location(0, 0, response.readInt());
+                String message = response.readUTF();
+                if (kind == Diagnosis.Kind.ERROR) logger.error(new Error(message, location));
+                else logger.warning(new Warning(message, location));
+            }
+            byte[] output = new byte[response.readInt()];
+            response.readFully(output);
+            out.write(output);
+            return exit;
+        }
+    }
+}
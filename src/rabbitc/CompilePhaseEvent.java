@@ -0,0 +1,32 @@
+package rabbitc;
+
+import jdk.jfr.*;
+
+// a phase of a compilation for flight recordings, see CompileStatistics
+@Name("rabbitc.CompilePhase")
+@Label("Compile Phase")
+@Category({"Rabbit", "Compiler"})
+@Description("A phase of RabbitCompiler, its duration includes the phases run inside it, its self time does not")
+@StackTrace(false)
+class CompilePhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Self Time")
+    @Timespan
+    long selfTime;
+
+    @Label("Allocated")
+    @Description("Bytes allocated on the heap by the phase itself, -1 where the jvm does not count them")
+    @DataAmount
+    long allocated;
+
+    @Label("Nodes")
+    @Description("Tree nodes after the phase, -1 for phases which do not work on the tree")
+    long nodes;
+
+    @Label("Instructions")
+    @Description("Instructions after the phase, -1 for phases which do not work on instructions")
+    long instructions;
+}
@@ -0,0 +1,163 @@
+package rabbitc;
+
+import computil.diags.BufferedLogger;
+import computil.diags.Diagnosis;
+import computil.diags.Error;
+import computil.util.Location;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compiles for clients connecting over a unix domain socket, see CompileClient, so a build pays for the
+ * startup and warm-up of the jvm once instead of per file. Trees of sources compiled before are taken from
+ * a TreeCache. Every connection is served on a virtual thread of its own, so a client which is slow to send
+ * its request holds up no other.
+ *
+ * A request is the command, the absolute path of the source and the flags, each a UTF string, the flags
+ * preceded by their number as int. The response is the exit value as int, the number of diagnostics as
+ * int, each its kind as byte, line as int and message as UTF string, and the output as an int length
+ * followed by its bytes.
+ */
+public class CompileServer implements Closeable {
+
+    static final String RUN = "run", DIS = "dis", TRANSPILE = "transpile", STOP = "stop";
+
+    private static final int DEFAULT_CACHE_CAPACITY = 256;
+
+    // how long requests in progress may take to finish once the server is stopped
+    private static final int STOP_GRACE_SECONDS = 10;
+
+    private final Path socket;
+
+    private final ServerSocketChannel channel;
+
+    private final TreeCache trees;
+
+    private final RabbitCompiler compiler;
+
+    private volatile boolean stopped = false;
+
+    public CompileServer(Path socket) throws IOException {
+        this(socket, new TreeCache(DEFAULT_CACHE_CAPACITY));
+    }
+
+    public CompileServer(Path socket, TreeCache trees) throws IOException {
+        this.socket = socket;
+        this.trees = trees;
+        this.compiler = new RabbitCompiler(trees);
+        // a socket file left by a server which did not shut down would fail the bind
+        Files.deleteIfExists(socket);
+        this.channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.channel.bind(UnixDomainSocketAddress.of(socket));
+    }
+
+    public TreeCache getTrees() {
+        return trees;
+    }
+
+    // serves requests until a client sends STOP, then waits a while for those in progress
+    public void serve() throws IOException {
+        ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            while (!stopped){
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e){
+                    break; // closed by STOP
+                }
+                connections.execute(() -> handle(client));
+            }
+        } finally {
+            connections.shutdown();
+            try {
+                if (!connections.awaitTermination(STOP_GRACE_SECONDS, TimeUnit.SECONDS))
+                    connections.shutdownNow(); // interrupting a read closes the channel of a stalled client
+            } catch (InterruptedException e){
+                connections.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void handle(SocketChannel client){
+        try (client){
+            serve(client);
+        } catch (IOException e){
+            // the client went away, which does not concern the others
+            System.err.println("compile server: " + e);
+        }
+    }
+
+    private void serve(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+        String command = in.readUTF();
+        if (command.equals(STOP)){
+            stopped = true;
+            respond(out, 0, new BufferedLogger(), new ByteArrayOutputStream());
+            // wakes the accepting thread, the socket file is deleted by close
+            channel.close();
+            return;
+        }
+        Path source = Path.of(in.readUTF());
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = in.readUTF();
+
+        BufferedLogger logger = new BufferedLogger();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exit;
+        try {
+            exit = switch (command){
+                case RUN -> compiler.run(source, output, logger, args);
+                case DIS -> compiler.dis(source, output, logger, args);
+                case TRANSPILE -> compiler.transpile(source, output, logger, args);
+                default -> fail(logger, "unknown command " + command);
+            };
+        } catch (IOException e){
+            exit = fail(logger, "could not read " + source + ": " + e.getMessage());
+        } catch (RuntimeException e){
+            // a broken compiler fails the request, the server stays up for the next one
+            exit = fail(logger, "compiler failed: " + e);
+        }
+        respond(out, exit, logger, output);
+    }
+
+    private static int fail(BufferedLogger logger, String message){
+        logger.error(new Error(message, new Location(0, 0, 0)));
+        return -1;
+    }
+
+    private static void respond(DataOutputStream out, int exit, BufferedLogger logger, ByteArrayOutputStream output)
+            throws IOException {
+        out.writeInt(exit);
+        out.writeInt(logger.getDiagnoses().size());
+        for (Diagnosis diagnosis : logger.getDiagnoses()){
+            out.writeByte(diagnosis.getKind().ordinal());
+            out.writeInt(diagnosis.getLocation().line());
+            out.writeUTF(diagnosis.getMessage());
+        }
+        out.writeInt(output.size());
+        output.writeTo(out);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(socket);
+    }
+}
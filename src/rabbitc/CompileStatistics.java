@@ -0,0 +1,270 @@
+package rabbitc;
+
+import computil.generation.Function;
+import computil.generation.IRUnit;
+import computil.generation.Target;
+import computil.optim.PassManager;
+import computil.tree.Tree;
+import computil.util.AllocatedBytes;
+import computil.util.TreeScanner;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * Where one compilation spends its time: the wall time and the heap allocations of every phase, with the
+ * number of tree nodes or instructions it leaves behind. Phases nest, the targets run inside the generator
+ * and each other, so the time and allocations of a phase are its own, without those of the phases inside
+ * it. Allocations are those of the compiling thread, the workers of a parallel parse or of a ModuleCompiler
+ * are not counted, and the jvm counts none for the virtual threads a batch compiles on.
+ *
+ * Every phase is a CompilePhaseEvent as well, so flight recordings show compilations without --stats.
+ * Without either, nothing is measured.
+ */
+public final class CompileStatistics {
+
+    // counts are -1 where they do not apply, allocations where the jvm does not count them
+    public record Phase(String name, long nanos, long allocatedBytes, long nodes, long instructions) {}
+
+    // for compilations nobody measures, shared since it keeps no state
+    static final CompileStatistics DISABLED = new CompileStatistics(false);
+
+    private final boolean enabled;
+
+    // in the order the phases began
+    private final List<Phase> phases = new ArrayList<>();
+
+    private final Deque<Open> open = new ArrayDeque<>();
+
+    private static final class Open {
+        private final String name;
+        private final int index;
+        private final long start;
+        private final long allocated;
+        private final CompilePhaseEvent event = new CompilePhaseEvent();
+        private long innerNanos = 0;
+        private long innerBytes = 0;
+        // handed to the first target by a phase without a unit of its own
+        private long instructions = -1;
+
+        private Open(String name, int index) {
+            this.name = name;
+            this.index = index;
+            this.event.begin();
+            this.allocated = AllocatedBytes.ofCurrentThread();
+            this.start = System.nanoTime();
+        }
+    }
+
+    public CompileStatistics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // enabled if asked for or if a flight recording takes the events
+    static CompileStatistics of(boolean asked){
+        return new CompileStatistics(asked || new CompilePhaseEvent().isEnabled());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void begin(String name){
+        if (!enabled) return;
+        phases.add(null);
+        open.push(new Open(name, phases.size() - 1));
+    }
+
+    public void end(){
+        end(-1, -1);
+    }
+
+    public void end(Tree tree){
+        if (!enabled) return;
+        end(countNodes(tree), -1);
+    }
+
+    public void end(IRUnit unit){
+        if (!enabled) return;
+        end(-1, countInstructions(unit));
+    }
+
+    private void end(long nodes, long instructions){
+        if (!enabled) return;
+        long nanos = System.nanoTime();
+        long allocated = AllocatedBytes.ofCurrentThread();
+        Open phase = open.pop();
+        nanos -= phase.start;
+        allocated = allocated < 0 ? -1 : allocated - phase.allocated;
+
+        Open outer = open.peek();
+        if (outer != null){
+            outer.innerNanos += nanos;
+            outer.innerBytes += allocated;
+        }
+        if (instructions < 0)
+            instructions = phase.instructions;
+        nanos -= phase.innerNanos;
+        if (allocated >= 0)
+            allocated -= phase.innerBytes;
+        phases.set(phase.index, new Phase(phase.name, nanos, allocated, nodes, instructions));
+
+        CompilePhaseEvent event = phase.event;
+        event.end();
+        if (event.shouldCommit()){
+            event.phase = phase.name;
+            event.selfTime = nanos;
+            event.allocated = allocated;
+            event.nodes = nodes;
+            event.instructions = instructions;
+            event.commit();
+        }
+    }
+
+    // the optimizer passes, which the pass manager measured itself, as phases ending with the tree
+    public void add(PassManager passes, Tree tree){
+        if (!enabled) return;
+        long nodes = countNodes(tree);
+        for (PassManager.PassStatistics pass : passes.getStatistics()){
+            phases.add(new Phase(pass.name(), pass.nanos(), pass.allocatedBytes(), nodes, -1));
+            CompilePhaseEvent event = new CompilePhaseEvent();
+            if (event.shouldCommit()){
+                event.phase = pass.name();
+                event.selfTime = pass.nanos();
+                event.allocated = pass.allocatedBytes();
+                event.nodes = nodes;
+                event.instructions = -1;
+                event.commit();
+            }
+        }
+    }
+
+    // the target as a phase named by its class, which also tells the enclosing phase what it was handed
+    public Target measure(Target target){
+        if (!enabled) return target;
+        String name = target.getClass().getSimpleName();
+        return unit -> {
+            Open outer = open.peek();
+            if (outer != null && outer.instructions < 0)
+                outer.instructions = countInstructions(unit);
+            begin(name);
+            try {
+                target.write(unit);
+            } finally {
+                end(unit);
+            }
+        };
+    }
+
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    public long getNanos(){
+        long nanos = 0;
+        for (Phase phase : phases)
+            nanos += phase.nanos();
+        return nanos;
+    }
+
+    // -1 if the jvm does not count them
+    public long getAllocatedBytes(){
+        long bytes = 0;
+        for (Phase phase : phases){
+            if (phase.allocatedBytes() < 0) return -1;
+            bytes += phase.allocatedBytes();
+        }
+        return bytes;
+    }
+
+    // a table, printed at once so the tables of concurrent compilations do not interleave
+    public void report(PrintStream out){
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-24s %10s %12s %8s %12s%n", "phase", "time(ms)", "alloc(KiB)", "nodes", "instructions"));
+        for (Phase phase : phases)
+            table.append(String.format("%-24s %10.3f %12s %8s %12s%n", phase.name(), phase.nanos() / 1e6,
+                    kib(phase.allocatedBytes()), count(phase.nodes()), count(phase.instructions())));
+        table.append(String.format("%-24s %10.3f %12s%n", "total", getNanos() / 1e6, kib(getAllocatedBytes())));
+        out.print(table);
+    }
+
+    private static String kib(long bytes){
+        return bytes < 0 ? "-" : String.format("%.1f", bytes / 1024.0);
+    }
+
+    private static String count(long count){
+        return count < 0 ? "-" : Long.toString(count);
+    }
+
+    // one object on one line, counts which do not apply are null
+    public String toJson(){
+        return toJson(null);
+    }
+
+    // as toJson(), with the input the statistics are of first, unless it is null
+    public String toJson(String input){
+        StringBuilder json = new StringBuilder("{");
+        if (input != null){
+            json.append("\"input\":");
+            string(json, input);
+            json.append(',');
+        }
+        json.append("\"phases\":[");
+        for (int i = 0; i < phases.size(); i++){
+            Phase phase = phases.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"name\":");
+            string(json, phase.name());
+            json.append(",\"nanos\":").append(phase.nanos())
+                    .append(",\"allocatedBytes\":").append(number(phase.allocatedBytes()))
+                    .append(",\"nodes\":").append(number(phase.nodes()))
+                    .append(",\"instructions\":").append(number(phase.instructions()))
+                    .append('}');
+        }
+        json.append("],\"nanos\":").append(getNanos())
+                .append(",\"allocatedBytes\":").append(number(getAllocatedBytes()))
+                .append('}');
+        return json.toString();
+    }
+
+    private static String number(long value){
+        return value < 0 ? "null" : Long.toString(value);
+    }
+
+    private static void string(StringBuilder json, String value){
+        json.append('"');
+        for (char c : value.toCharArray()){
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        json.append('"');
+    }
+
+    private static long countNodes(Tree tree){
+        NodeCounter counter = new NodeCounter();
+        counter.scan(tree, null);
+        return counter.nodes;
+    }
+
+    private static long countInstructions(IRUnit unit){
+        long instructions = 0;
+        for (Function function : unit.getFunctions())
+            instructions += function.getStreamSize();
+        return instructions;
+    }
+
+    private static final class NodeCounter extends TreeScanner<Void, Void> {
+        private long nodes = 0;
+
+        @Override
+        public Void scan(Tree tree, Void unused) {
+            if (tree != null) nodes++;
+            return super.scan(tree, unused);
+        }
+    }
+}
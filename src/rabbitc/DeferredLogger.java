@@ -0,0 +1,100 @@
+package rabbitc;
+
+import computil.diags.BufferedLogger;
+import computil.diags.Error;
+import computil.diags.Logger;
+import computil.diags.Warning;
+import computil.tree.FunctionTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The diagnostics of a parse with lazy bodies in source order. Those of the declarations are kept as they
+ * are reported, those of a skipped body at the place of the body, until it is parsed. flush parses the
+ * bodies which are not parsed yet and passes everything on, as an eager parse would have reported it.
+ */
+final class DeferredLogger implements Logger {
+
+    // Diagnosis or Body
+    private final List<Object> entries = new ArrayList<>();
+
+    // the diagnostics of one skipped body, buffered until the body has its place in a log
+    static final class Body implements Logger {
+        // the function whose body this is, its getBody parses the body
+        private FunctionTree function;
+        private BufferedLogger pending = new BufferedLogger();
+        private Logger target = null;
+
+        void setFunction(FunctionTree function) {
+            this.function = function;
+        }
+
+        @Override
+        public synchronized void error(Error error) {
+            if (target != null) target.error(error);
+            else pending.error(error);
+        }
+
+        @Override
+        public synchronized void warning(Warning warning) {
+            if (target != null) target.warning(warning);
+            else pending.warning(warning);
+        }
+
+        // what was buffered goes to the logger, and what the body reports later as well
+        private synchronized void release(Logger logger){
+            pending.replay(logger);
+            pending = null;
+            target = logger;
+        }
+    }
+
+    @Override
+    public synchronized void error(Error error) {
+        entries.add(error);
+    }
+
+    @Override
+    public synchronized void warning(Warning warning) {
+        entries.add(warning);
+    }
+
+    // the logger for a body skipped now, after everything reported so far
+    synchronized Body defer(){
+        Body body = new Body();
+        entries.add(body);
+        return body;
+    }
+
+    // moves the entries to the logger, bodies stay deferred in another DeferredLogger and are left unparsed
+    synchronized void replay(Logger logger){
+        if (logger instanceof DeferredLogger deferred){
+            synchronized (deferred){
+                deferred.entries.addAll(entries);
+            }
+        }
+        else for (Object entry : entries){
+            if (entry instanceof Body body) body.release(logger);
+            else pass(entry, logger);
+        }
+        entries.clear();
+    }
+
+    // parses every deferred body and passes all diagnostics on in source order
+    synchronized void flush(Logger logger){
+        for (Object entry : entries){
+            if (entry instanceof Body body){
+                body.function.getBody();
+                body.release(logger);
+            }
+            else pass(entry, logger);
+        }
+        entries.clear();
+    }
+
+    private static void pass(Object diagnosis, Logger logger){
+        if (diagnosis instanceof Error error) logger.error(error);
+        else logger.warning((Warning) diagnosis);
+    }
+}
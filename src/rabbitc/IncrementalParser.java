@@ -0,0 +1,285 @@
+package rabbitc;
+
+import computil.diags.BufferedLogger;
+import computil.diags.Diagnosis;
+import computil.diags.Error;
+import computil.diags.Warning;
+import computil.parse.CharSequenceReader;
+import computil.parse.Names;
+import computil.parse.TextEdit;
+import computil.parse.Token;
+import computil.tree.RootTree;
+import computil.tree.Trees;
+import computil.util.Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static computil.tree.Trees.BasicRootTree;
+
+/*
+ * Parses a source as a sequence of top-level declarations, so an edit only relexes the text from the
+ * declaration before it up to the point where the new tokens line up with the old ones again, and only
+ * reparses the declarations within that region. Declarations before the region are reused as they are,
+ * those after it are reused by identity as well. Their trees are moved to their new offsets and lines
+ * when the tree of the source is asked for, so a reparse takes over the trees of the source it started from.
+ */
+public class IncrementalParser {
+
+    private final Names names;
+
+    public IncrementalParser() {
+        this(new Names());
+    }
+
+    public IncrementalParser(Names names) {
+        this.names = names;
+    }
+
+    public ParsedSource parse(String text){
+        BufferedLogger lexLog = new BufferedLogger();
+        TokenBuffer tokens = TokenBuffer.scan(new CharSequenceReader(text), names, lexLog);
+
+        List<Declaration> declarations = new ArrayList<>();
+        parseDeclarations(tokens, 0, tokens.size() - 1, declarations);
+        assignLexDiagnostics(tokens, declarations, 0, lexLog.getDiagnoses());
+        return new ParsedSource(text, tokens, declarations, declarations.size());
+    }
+
+    public ParsedSource reparse(ParsedSource previous, TextEdit edit){
+        String text = edit.apply(previous.text);
+        TokenBuffer old = previous.tokens;
+        List<Declaration> declarations = previous.declarations;
+
+        // the first declaration the edit can affect, edits touching a token's end may extend that token
+        int damaged = firstDeclarationEndingAtOrAfter(old, declarations, edit.offset());
+        // the last declaration extends to EOF, whose position moves with any edit behind it
+        if (damaged == declarations.size() && damaged > 0)
+            damaged--;
+
+        // relexing restarts after the last token of the previous declaration, where the lexer is known to be clean
+        int firstToken = damaged > 0 ? declarations.get(damaged - 1).last : 0;
+        int regionStart = firstToken > 0 ? old.endAt(firstToken - 1) : 0;
+        int regionLine = firstToken > 0 ? old.lineAt(firstToken - 1) : 1;
+
+        BufferedLogger lexLog = new BufferedLogger();
+        Scanner scanner = new Scanner(new CharSequenceReader(text, regionStart), names, lexLog, regionStart, regionLine);
+
+        // relex until a token after the edit starts an old declaration at its shifted offset
+        List<Token> region = new ArrayList<>();
+        int resync = declarations.size();
+        int lineDelta = 0;
+        int candidate = damaged;
+        int logged = 0;
+        while (true){
+            // the scanner reads a token ahead, so it is scanned by peek() or by the previous consume()
+            Token token = scanner.peek();
+            if (token.hasTag(TokenKind.EOF)){
+                region.add(token);
+                break;
+            }
+
+            Location location = token.getLocation();
+            int oldStart = location.startPos() - edit.delta();
+            if (location.startPos() >= edit.insertedEnd() && lexLog.getDiagnoses().size() == logged){
+                while (candidate < declarations.size() && old.startAt(declarations.get(candidate).first) < oldStart)
+                    candidate++;
+                if (candidate < declarations.size() && matches(old, declarations.get(candidate).first, token, oldStart)){
+                    resync = candidate;
+                    lineDelta = location.line() - old.lineAt(declarations.get(candidate).first);
+                    break;
+                }
+            }
+
+            region.add(token);
+            logged = lexLog.getDiagnoses().size();
+            scanner.consume();
+        }
+
+        int to = resync < declarations.size() ? declarations.get(resync).first : old.size();
+        TokenBuffer tokens = TokenBuffer.splice(old, firstToken, to, region, edit.delta(), lineDelta);
+        int tokenDelta = firstToken + region.size() - to;
+
+        List<Declaration> result = new ArrayList<>(declarations.subList(0, damaged));
+
+        List<Diagnosis> lexDiagnostics = new ArrayList<>(lexLog.getDiagnoses());
+        int end = parseDeclarations(tokens, firstToken, firstToken + region.size(), result);
+
+        // an unbalanced region swallows the following declarations, reparse until the boundaries line up again
+        while (true){
+            int boundary = resync < declarations.size()
+                    ? declarations.get(resync).first + tokenDelta
+                    : tokens.size() - 1;
+            if (boundary == end) break;
+            if (boundary < end)
+                lexDiagnostics.addAll(shift(declarations.get(resync++).lexDiagnostics, edit.delta(), lineDelta));
+            else end = parseDeclarations(tokens, end, boundary, result);
+        }
+        assignLexDiagnostics(tokens, result, damaged, lexDiagnostics);
+
+        int reparsed = result.size() - damaged;
+        for (int i = resync; i < declarations.size(); i++){
+            Declaration declaration = declarations.get(i);
+            result.add(new Declaration(declaration.first + tokenDelta, declaration.last + tokenDelta, declaration.tree,
+                    shift(declaration.lexDiagnostics, edit.delta(), lineDelta),
+                    shift(declaration.parseDiagnostics, edit.delta(), lineDelta)));
+        }
+
+        // a declaration which became the last one now runs into EOF instead of into its successor
+        int lastIndex = result.size() - 1;
+        if (lastIndex >= 0 && lastIndex < damaged){
+            Declaration declaration = result.get(lastIndex);
+            result.set(lastIndex, parseDeclaration(tokens, declaration.first, declaration.last, declaration.lexDiagnostics));
+            reparsed++;
+        }
+
+        return new ParsedSource(text, tokens, result, reparsed);
+    }
+
+    // parses the declarations starting within [first, last), returns the end of the last one
+    private int parseDeclarations(TokenBuffer tokens, int first, int last, List<Declaration> result){
+        int eof = tokens.size() - 1;
+        int end = first;
+        while (end < last && end < eof){
+            int next = RabbitParser.findDeclarationEnd(tokens, end);
+            result.add(parseDeclaration(tokens, end, next, new ArrayList<>()));
+            end = next;
+        }
+        return end;
+    }
+
+    // lexer diagnostics belong to the declaration holding the offending characters
+    private void assignLexDiagnostics(TokenBuffer tokens, List<Declaration> declarations, int from, List<Diagnosis> lexDiagnostics){
+        for (Diagnosis diagnosis : lexDiagnostics){
+            int position = diagnosis.getLocation().startPos();
+            int owner = from;
+            while (owner < declarations.size() - 1 && tokens.endAt(declarations.get(owner).last - 1) < position)
+                owner++;
+            if (owner < declarations.size())
+                declarations.get(owner).lexDiagnostics.add(diagnosis);
+        }
+    }
+
+    private Declaration parseDeclaration(TokenBuffer tokens, int first, int last, List<Diagnosis> lexDiagnostics){
+        BufferedLogger log = new BufferedLogger();
+        RootTree tree = new RabbitParser(tokens.range(first, last), log).parseProgram();
+        return new Declaration(first, last, new PlacedTree(tree, tokens.startAt(first), tokens.lineAt(first)),
+                lexDiagnostics, log.getDiagnoses());
+    }
+
+    private static int firstDeclarationEndingAtOrAfter(TokenBuffer tokens, List<Declaration> declarations, int offset){
+        int low = 0, high = declarations.size();
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (tokens.endAt(declarations.get(mid).last - 1) < offset)
+                low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static boolean matches(TokenBuffer old, int index, Token token, int oldStart){
+        return old.startAt(index) == oldStart
+                && old.kindAt(index) == token.getTag()
+                && old.lexemAt(index).equals(token.getLexem());
+    }
+
+    private static List<Diagnosis> shift(List<Diagnosis> diagnostics, int charDelta, int lineDelta){
+        if (charDelta == 0 && lineDelta == 0)
+            return new ArrayList<>(diagnostics);
+        List<Diagnosis> shifted = new ArrayList<>(diagnostics.size());
+        for (Diagnosis diagnosis : diagnostics){
+            Location location = diagnosis.getLocation();
+            Location moved = new Location(location.startPos() + charDelta, location.endPos() + charDelta, location.line() + lineDelta);
+            shifted.add(diagnosis.getKind() == Diagnosis.Kind.ERROR
+                    ? new Error(diagnosis.getMessage(), moved)
+                    : new Warning(diagnosis.getMessage(), moved));
+        }
+        return shifted;
+    }
+
+
+    // a top-level declaration, covering the tokens [first, last)
+    private record Declaration(int first, int last, PlacedTree tree,
+                               List<Diagnosis> lexDiagnostics, List<Diagnosis> parseDiagnostics) {}
+
+    // the tree of a declaration with the offset and line of its first token as its locations have them
+    private static final class PlacedTree {
+        private final RootTree tree;
+        private int start;
+        private int line;
+
+        private PlacedTree(RootTree tree, int start, int line) {
+            this.tree = tree;
+            this.start = start;
+            this.line = line;
+        }
+
+        // the tree with its locations moved to a declaration starting at the offset and line
+        private synchronized RootTree moveTo(int start, int line){
+            Trees.move(tree, start - this.start, line - this.line);
+            this.start = start;
+            this.line = line;
+            return tree;
+        }
+    }
+
+    public static final class ParsedSource {
+        private final String text;
+        private final TokenBuffer tokens;
+        private final List<Declaration> declarations;
+        private final int reparsed;
+        private RootTree tree;
+
+        private ParsedSource(String text, TokenBuffer tokens, List<Declaration> declarations, int reparsed) {
+            this.text = text;
+            this.tokens = tokens;
+            this.declarations = declarations;
+            this.reparsed = reparsed;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public TokenBuffer getTokens() {
+            return tokens;
+        }
+
+        // number of declarations parsed to produce this source, all of them for an initial parse
+        public int getReparsedCount() {
+            return reparsed;
+        }
+
+        public int getDeclarationCount() {
+            return declarations.size();
+        }
+
+        public RootTree getTree() {
+            if (tree == null){
+                BasicRootTree rootTree = new BasicRootTree();
+                for (Declaration declaration : declarations){
+                    RootTree placed = declaration.tree.moveTo(tokens.startAt(declaration.first), tokens.lineAt(declaration.first));
+                    rootTree.imports.addAll(placed.getImports());
+                    rootTree.structs.addAll(placed.getStructs());
+                    rootTree.templates.addAll(placed.getTemplates());
+                    rootTree.impls.addAll(placed.getImpls());
+                    rootTree.callables.addAll(placed.getCallables());
+                }
+                tree = rootTree;
+            }
+            return tree;
+        }
+
+        public List<Diagnosis> getDiagnoses() {
+            List<Diagnosis> diagnostics = new ArrayList<>();
+            for (Declaration declaration : declarations){
+                diagnostics.addAll(declaration.lexDiagnostics);
+                diagnostics.addAll(declaration.parseDiagnostics);
+            }
+            return Collections.unmodifiableList(diagnostics);
+        }
+    }
+
+}
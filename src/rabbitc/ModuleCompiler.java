@@ -0,0 +1,470 @@
+package rabbitc;
+
+import computil.diags.BufferedLogger;
+import computil.diags.Diagnosis;
+import computil.diags.Error;
+import computil.diags.Logger;
+import computil.diags.Warning;
+import computil.tree.*;
+import computil.util.Location;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static computil.tree.Trees.*;
+
+/*
+ * Compiles a program of several files. The root file and every file it imports, directly or not, is a
+ * module, `import a.b;` names the module in a/b.rbt next to the root file. A module is checked against its
+ * own declarations and the interfaces of the modules it imports, see ModuleInterface, on its own virtual
+ * thread once those are checked, so modules which do not import each other are checked in parallel. The
+ * modules are then linked into one program, which must have a main function, and compiled to one output.
+ *
+ * The analyzed modules are kept from one compilation to the next. A module is parsed and checked again only
+ * if its source changed or the interface of a module it imports did, so changing the body of a function
+ * checks only the module it is in.
+ */
+public class ModuleCompiler {
+
+    private static final String EXTENSION = ".rbt";
+
+    private final RabbitCompiler compiler;
+
+    private final int parallelism;
+
+    // by the absolute path of the module
+    private final Map<Path, Analysis> analyses = new ConcurrentHashMap<>();
+
+    // of the last compilation, in the order they are linked
+    private List<Module> modules = List.of();
+
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public ModuleCompiler(int parallelism) {
+        this(new RabbitCompiler(), parallelism);
+    }
+
+    public ModuleCompiler(RabbitCompiler compiler, int parallelism) {
+        this.compiler = compiler;
+        this.parallelism = parallelism;
+    }
+
+    // a module as checked, reused as long as its source and the interfaces of its imports stay the same
+    private record Analysis(String sourceHash, String importsHash, RootTree tree, ModuleInterface summary,
+                            List<Diagnosis> diagnoses) {
+        boolean failed(){
+            return summary == null;
+        }
+    }
+
+    // a module as found by the current compilation
+    private static final class Module {
+        final Path path;
+        final String name;
+        final byte[] source;
+        final String sourceHash;
+        // parsed while loading if the source changed, null otherwise
+        RootTree tree;
+        final BufferedLogger parseDiagnoses = new BufferedLogger();
+        // of a source which could not be read, imports which do not resolve and import cycles
+        final BufferedLogger importDiagnoses = new BufferedLogger();
+        final List<Path> imports = new ArrayList<>();
+        // where each of the imports is written
+        final List<Location> importLocations = new ArrayList<>();
+        // the modules it imports, directly or not, in the order they are linked
+        final List<Module> visible = new ArrayList<>();
+        Analysis analysis;
+
+        Module(Path path, String name, byte[] source) {
+            this.path = path;
+            this.name = name;
+            this.source = source;
+            this.sourceHash = hash(source);
+        }
+    }
+
+    public synchronized int run(Path root, OutputStream out, Logger logger, String... args) throws IOException {
+        return compile(root, out, false, logger, args);
+    }
+
+    public synchronized int dis(Path root, OutputStream out, Logger logger, String... args) throws IOException {
+        return compile(root, out, true, logger, args);
+    }
+
+    private int compile(Path root, OutputStream out, boolean disassembled, Logger logger, String[] args)
+            throws IOException {
+        CompileStatistics statistics = RabbitCompiler.statistics(args);
+        return RabbitCompiler.report(statistics, args, compile(root, out, disassembled, logger, args, statistics));
+    }
+
+    // loading and analyzing are measured as a whole, the modules are parsed and checked on other threads
+    private int compile(Path root, OutputStream out, boolean disassembled, Logger logger, String[] args,
+                        CompileStatistics statistics) throws IOException {
+        root = root.toAbsolutePath().normalize();
+        Map<Path, Module> graph;
+        statistics.begin("load");
+        try {
+            graph = load(root, args);
+        } finally {
+            statistics.end();
+        }
+        List<Module> order = sort(graph.get(root), graph);
+        if (order == null){
+            modules = List.of();
+            return replay(graph.values(), logger);
+        }
+        modules = order;
+        statistics.begin("analyze");
+        try {
+            analyze(order, args);
+        } finally {
+            statistics.end();
+        }
+        int exit = replay(order, logger);
+        if (exit != 0) return exit;
+
+        BufferedLogger diagnoses = new BufferedLogger();
+        statistics.begin("link");
+        RootTree program = link(order, diagnoses);
+        statistics.end(program);
+        if (diagnoses.getDiagnoses().isEmpty())
+            compiler.checkProgram(program, diagnoses, statistics);
+        diagnoses.replay(logger);
+        for (Diagnosis diagnosis : diagnoses.getDiagnoses())
+            if (diagnosis instanceof Error)
+                return -1;
+        return compiler.generate(program, out, disassembled, args, logger, statistics);
+    }
+
+    // reads the root and every module it imports, one level of imports at a time, each file on its own thread
+    private Map<Path, Module> load(Path root, String[] args){
+        Path directory = root.getParent();
+        Map<Path, Module> graph = new LinkedHashMap<>();
+        List<Path> level = List.of(root);
+        while (!level.isEmpty()){
+            List<Future<Module>> futures = new ArrayList<>(level.size());
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()){
+                for (Path path : level)
+                    futures.add(executor.submit(() -> loadModule(path, directory, args)));
+            }
+            List<Path> next = new ArrayList<>();
+            for (Future<Module> future : futures){
+                Module module = join(future);
+                graph.put(module.path, module);
+                for (Path imported : module.imports)
+                    if (!graph.containsKey(imported) && !next.contains(imported) && !level.contains(imported))
+                        next.add(imported);
+            }
+            level = next;
+        }
+        return graph;
+    }
+
+    private Module loadModule(Path path, Path directory, String[] args){
+        byte[] source;
+        try {
+            source = Files.readAllBytes(path);
+        } catch (IOException e){
+            // reported like an import which does not resolve, so the module and those importing it fail
+            Module module = new Module(path, name(path, directory), new byte[0]);
+            module.importDiagnoses.error(new Error("could not read " + directory.relativize(path), new Location(0, 0, 0)));
+            return module;
+        }
+        Module module = new Module(path, name(path, directory), source);
+        Analysis analysis = analyses.get(path);
+        RootTree tree;
+        if (analysis != null && analysis.sourceHash().equals(module.sourceHash)){
+            // the imports of an unchanged source are those of its last tree
+            tree = analysis.tree();
+        }
+        else {
+            tree = parse(module, args);
+            module.tree = tree;
+        }
+
+        for (ImportTree importTree : tree.getImports()){
+            Path imported = directory.resolve(importTree.getImportedName().replace('.', '/') + EXTENSION).normalize();
+            if (!Files.isRegularFile(imported)){
+                module.importDiagnoses.error(new Error("no module " + importTree.getImportedName()
+                        + " at " + directory.relativize(imported), importTree.getLocation()));
+                continue;
+            }
+            if (importTree instanceof BasicImportTree basic)
+                basic.absolutePath = imported.toString();
+            if (!module.imports.contains(imported)){
+                module.imports.add(imported);
+                module.importLocations.add(importTree.getLocation());
+            }
+        }
+        return module;
+    }
+
+    private RootTree parse(Module module, String[] args){
+        // on the heap, a tree kept for later compilations slices names out of its source
+        return compiler.parseForCheck(RabbitCompiler.reader(module.source, args), module.parseDiagnoses, args);
+    }
+
+    // the modules with every module after those it imports, null if the imports form a cycle
+    private static List<Module> sort(Module root, Map<Path, Module> graph){
+        List<Module> order = new ArrayList<>();
+        if (!visit(root, graph, new HashSet<>(), new ArrayDeque<>(), order))
+            return null;
+
+        for (Module module : order){
+            Set<Module> visible = new LinkedHashSet<>();
+            for (Path imported : module.imports)
+                visible.addAll(graph.get(imported).visible);
+            for (Path imported : module.imports)
+                visible.add(graph.get(imported));
+            // in link order, so every module sees declarations in the same order
+            for (Module candidate : order)
+                if (visible.contains(candidate))
+                    module.visible.add(candidate);
+        }
+        return order;
+    }
+
+    private static boolean visit(Module module, Map<Path, Module> graph, Set<Module> done, Deque<Module> path,
+                                 List<Module> order){
+        if (done.contains(module)) return true;
+        path.addLast(module);
+        for (int i = 0; i < module.imports.size(); i++){
+            Module imported = graph.get(module.imports.get(i));
+            if (path.contains(imported)){
+                StringJoiner cycle = new StringJoiner(" -> ", "import cycle: ", " -> " + imported.name);
+                boolean inCycle = false;
+                for (Module step : path){
+                    inCycle |= step == imported;
+                    if (inCycle) cycle.add(step.name);
+                }
+                module.importDiagnoses.error(new Error(cycle.toString(), module.importLocations.get(i)));
+                return false;
+            }
+            if (!visit(imported, graph, done, path, order))
+                return false;
+        }
+        path.removeLast();
+        done.add(module);
+        order.add(module);
+        return true;
+    }
+
+    // checks every module on its own virtual thread once the modules it imports are checked
+    private void analyze(List<Module> order, String[] args){
+        Semaphore permits = new Semaphore(parallelism);
+        Map<Module, Future<?>> futures = new HashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()){
+            for (Module module : order){
+                List<Future<?>> imports = new ArrayList<>();
+                for (Module imported : module.visible)
+                    imports.add(futures.get(imported));
+                futures.put(module, executor.submit(() -> {
+                    for (Future<?> imported : imports)
+                        join(imported);
+                    permits.acquire();
+                    try {
+                        module.analysis = analyze(module, args);
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> future : futures.values())
+            join(future);
+    }
+
+    private Analysis analyze(Module module, String[] args){
+        // a module importing one which failed is not checked, the failure is reported where it is
+        if (!module.importDiagnoses.getDiagnoses().isEmpty())
+            return new Analysis(module.sourceHash, null, null, null, module.parseDiagnoses.getDiagnoses());
+        MessageDigest digest = digest();
+        for (Module imported : module.visible){
+            if (imported.analysis.failed())
+                return new Analysis(module.sourceHash, null, null, null, module.parseDiagnoses.getDiagnoses());
+            update(digest, imported.name);
+            update(digest, imported.analysis.summary().getHash());
+        }
+        String importsHash = HexFormat.of().formatHex(digest.digest());
+
+        Analysis last = analyses.get(module.path);
+        if (last != null && last.sourceHash().equals(module.sourceHash) && last.importsHash().equals(importsHash)){
+            reused.incrementAndGet();
+            return last;
+        }
+
+        analyzed.incrementAndGet();
+        // the last tree is folded already, checking it again would not find what the source says
+        RootTree tree = module.tree != null ? module.tree : parse(module, args);
+        BufferedLogger diagnoses = new BufferedLogger();
+        module.parseDiagnoses.replay(diagnoses);
+
+        BasicRootTree check = new BasicRootTree();
+        for (Module imported : module.visible)
+            add(check, imported.analysis.summary().getDeclarations());
+        add(check, tree);
+        compiler.checkModule(check, diagnoses);
+
+        boolean failed = false;
+        for (Diagnosis diagnosis : diagnoses.getDiagnoses())
+            failed |= diagnosis instanceof Error;
+        ModuleInterface summary = null;
+        if (!failed){
+            summary = ModuleInterface.of(tree);
+            compiler.optimize(tree, args);
+        }
+        Analysis analysis = new Analysis(module.sourceHash, importsHash, tree, summary, diagnoses.getDiagnoses());
+        analyses.put(module.path, analysis);
+        return analysis;
+    }
+
+    private static void add(BasicRootTree root, RootTree declarations){
+        root.structs.addAll(declarations.getStructs());
+        root.templates.addAll(declarations.getTemplates());
+        root.impls.addAll(declarations.getImpls());
+        root.callables.addAll(declarations.getCallables());
+    }
+
+    // reports what was found in each module, prefixed by its name, -1 if there was an error
+    private static int replay(Collection<Module> modules, Logger logger){
+        int exit = 0;
+        for (Module module : modules){
+            List<Diagnosis> diagnoses = new ArrayList<>(module.importDiagnoses.getDiagnoses());
+            diagnoses.addAll(module.analysis != null ? module.analysis.diagnoses() : module.parseDiagnoses.getDiagnoses());
+            for (Diagnosis diagnosis : diagnoses){
+                String message = module.name + ": " + diagnosis.getMessage();
+                if (diagnosis instanceof Error){
+                    logger.error(new Error(message, diagnosis.getLocation()));
+                    exit = -1;
+                }
+                else logger.warning(new Warning(message, diagnosis.getLocation()));
+            }
+        }
+        return exit;
+    }
+
+    /*
+     * The declarations of all modules in one tree, in link order. The modules share one namespace, so a name
+     * may be defined once, except native functions, which every module using them declares, and which must
+     * then be declared alike.
+     */
+    private static RootTree link(List<Module> order, Logger logger){
+        BasicRootTree program = new BasicRootTree();
+        Map<String, Module> types = new HashMap<>();
+        Map<String, Module> callables = new HashMap<>();
+        Map<String, CallableTree> natives = new HashMap<>();
+        for (Module module : order){
+            RootTree tree = module.analysis.tree();
+            for (StructTree struct : tree.getStructs())
+                if (define(types, struct.getName(), struct.getLocation(), module, logger))
+                    program.structs.add(struct);
+            for (TemplateTree template : tree.getTemplates())
+                if (define(types, template.getName(), template.getLocation(), module, logger))
+                    program.templates.add(template);
+            program.impls.addAll(tree.getImpls());
+
+            for (CallableTree callable : tree.getCallables()){
+                CallableTree other = natives.get(callable.getName());
+                if (callable instanceof NativeFunctionTree && other != null){
+                    if (!ModuleInterface.signature(callable).equals(ModuleInterface.signature(other)))
+                        logger.error(new Error(module.name + ": nat fun " + callable.getName() + ModuleInterface.signature(callable)
+                                + " is declared as " + ModuleInterface.signature(other) + " in " + callables.get(callable.getName()).name,
+                                callable.getLocation()));
+                    continue;
+                }
+                if (!define(callables, callable.getName(), callable.getLocation(), module, logger))
+                    continue;
+                if (callable instanceof NativeFunctionTree)
+                    natives.put(callable.getName(), callable);
+                program.callables.add(callable);
+            }
+        }
+        return program;
+    }
+
+    private static boolean define(Map<String, Module> names, String name, Location location, Module module, Logger logger){
+        Module other = names.putIfAbsent(name, module);
+        if (other == null) return true;
+        logger.error(new Error(module.name + ": " + name + " is defined in both " + other.name + " and " + module.name, location));
+        return false;
+    }
+
+    // the path relative to the directory of the root, parts separated by '.', as it is imported
+    private static String name(Path path, Path directory){
+        String name = directory.relativize(path).toString().replace(path.getFileSystem().getSeparator(), ".");
+        return name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e){
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static MessageDigest digest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value){
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).flip());
+        digest.update(bytes);
+    }
+
+    private static String hash(byte[] source){
+        return HexFormat.of().formatHex(digest().digest(source));
+    }
+
+    // the interface of the module at the path as of the last compilation, null if it failed or is unknown
+    public ModuleInterface getInterface(Path path){
+        Analysis analysis = analyses.get(path.toAbsolutePath().normalize());
+        return analysis == null ? null : analysis.summary();
+    }
+
+    // the modules of the last compilation by name, in link order, the root last
+    public synchronized Map<String, Path> getModules(){
+        Map<String, Path> names = new LinkedHashMap<>();
+        for (Module module : modules)
+            names.put(module.name, module.path);
+        return names;
+    }
+
+    public long getAnalyzed() {
+        return analyzed.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    public void report(PrintStream out){
+        out.printf("modules: %d analyzed, %d reused%n", analyzed.get(), reused.get());
+    }
+}
@@ -0,0 +1,134 @@
+package rabbitc;
+
+import computil.tree.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+import static computil.tree.Trees.*;
+
+/*
+ * What a module declares for the modules importing it: its structs and templates, which templates it
+ * implements for which structs and the signatures of its functions. As trees it is what an importing module
+ * is checked against, functions without their bodies, as text it is valid source, with every function a
+ * native one, and its hash tells whether modules importing it need to be checked again.
+ */
+public final class ModuleInterface {
+
+    private final RootTree declarations;
+
+    private final String text;
+
+    private final String hash;
+
+    private ModuleInterface(RootTree declarations, String text) {
+        this.declarations = declarations;
+        this.text = text;
+        this.hash = hash(text);
+    }
+
+    public static ModuleInterface of(RootTree module){
+        BasicRootTree declarations = new BasicRootTree();
+        StringBuilder text = new StringBuilder();
+
+        for (StructTree struct : module.getStructs()){
+            declarations.structs.add(struct);
+            text.append("struct ").append(struct.getName()).append(" {\n");
+            for (FieldTree field : struct.getFields()){
+                text.append("    ").append(field.isMutable() ? "mut " : "").append(field.getName()).append(": ");
+                appendType(text, field.getType()).append(";\n");
+            }
+            text.append("}\n");
+        }
+
+        for (TemplateTree template : module.getTemplates()){
+            declarations.templates.add(template);
+            text.append("template ").append(template.getName()).append(" {\n");
+            for (TemplateMethodTree method : template.getMethods()){
+                text.append("    fun ").append(method.getName());
+                appendSignature(text, method.getParameters(), method.getReturnType()).append(";\n");
+            }
+            text.append("}\n");
+        }
+
+        // the methods of an implementation are checked where it is, importing modules only need to know of it
+        for (ImplementationTree impl : module.getImpls()){
+            BasicImplementationTree declaration = new BasicImplementationTree(impl.getName(), impl.getLocation());
+            declaration.forType = impl.getForTypeName();
+            declaration.objectName = impl.getObjectName();
+            declarations.impls.add(declaration);
+            text.append("impl ").append(impl.getName()).append(" for ").append(impl.getForTypeName()).append(" {}\n");
+        }
+
+        for (CallableTree callable : module.getCallables()){
+            BasicNativeFunctionTree declaration = new BasicNativeFunctionTree(callable.getName(), callable.getLocation());
+            declaration.parameters.addAll(callable.getParameters());
+            declaration.returnType = callable.getReturnType();
+            declarations.callables.add(declaration);
+            text.append("nat fun ").append(callable.getName()).append(signature(callable)).append(";\n");
+        }
+
+        return new ModuleInterface(declarations, text.toString());
+    }
+
+    // the parameters and return type as written in the text, as in "(a: int) -> int"
+    static String signature(CallableTree callable){
+        return appendSignature(new StringBuilder(), callable.getParameters(), callable.getReturnType()).toString();
+    }
+
+    private static StringBuilder appendSignature(StringBuilder text, List<ParameterTree> parameters, TypeTree returnType){
+        text.append('(');
+        for (int i = 0; i < parameters.size(); i++){
+            if (i > 0) text.append(", ");
+            text.append(parameters.get(i).getName()).append(": ");
+            appendType(text, parameters.get(i).getType());
+        }
+        text.append(") -> ");
+        return appendType(text, returnType);
+    }
+
+    private static StringBuilder appendType(StringBuilder text, TypeTree type){
+        text.append(type.name());
+        List<TypeTree> generics = type.getGenerics();
+        if (!generics.isEmpty()){
+            text.append('<');
+            for (int i = 0; i < generics.size(); i++){
+                if (i > 0) text.append(", ");
+                appendType(text, generics.get(i));
+            }
+            text.append('>');
+        }
+        if (type.isNullable())
+            text.append('?');
+        return text;
+    }
+
+    public RootTree getDeclarations() {
+        return declarations;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // the SHA-256 of the text
+    public String getHash() {
+        return hash;
+    }
+
+    private static String hash(String text){
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,99 +1,545 @@
 package rabbitc;
 
 import computil.check.*;
+import computil.diags.BufferedLogger;
+import computil.diags.Diagnosis;
 import computil.diags.Error;
 import computil.diags.Logger;
 import computil.diags.Warning;
 import computil.generation.Generator;
+import computil.generation.PeepholeOptimizer;
+import computil.generation.PoolCompactor;
 import computil.generation.Target;
+import computil.generation.targets.rbt.OperandOverflowException;
 import computil.generation.targets.rbt.RabbitBytecodeDisV1;
+import computil.generation.targets.rbt.RabbitBytecodeDisV2;
 import computil.generation.targets.rbt.RabbitBytecodeV1;
+import computil.generation.targets.rbt.RabbitBytecodeV2;
+import computil.generation.targets.jvm.JvmBytecode;
 import computil.optim.ConstantFolder;
-import computil.optim.Optimizer;
-import computil.parse.Lexer;
-import computil.parse.UnicodeReader;
+import computil.optim.PassManager;
+import computil.parse.BufferedUnicodeReader;
+import computil.parse.MappedSourceReader;
+import computil.parse.Names;
+import computil.parse.SourceReader;
+import computil.runtime.Interpreter;
+import computil.runtime.Natives;
+import computil.runtime.Program;
 import computil.transpile.CTranspiler;
+import computil.tree.ImportTree;
 import computil.tree.RootTree;
 import computil.tree.Tree;
+import computil.util.Location;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 public class RabbitCompiler {
 
-    private static final int MAX_OPTIMIZATION_PASSES = 100_000;
+    // names the compiler compares against as literals, entered first so lookups hit on identity
+    private static final String[] PREDEFINED_NAMES = {"main", "void", "int", "float", "bool", "str", "arr"};
+
+    public static final String PARALLEL_PARSE_FLAG = "--parallel-parse";
+
+    // function bodies are parsed when first visited, for tools which mostly need declarations
+    public static final String LAZY_BODIES_FLAG = "--lazy-bodies";
+
+    // prints the time and number of changes of every optimization pass to stderr
+    public static final String TIME_PASSES_FLAG = "--time-passes";
+
+    // prints the instruction count of every function before and after the peephole pass to stderr
+    public static final String PEEPHOLE_STATS_FLAG = "--peephole-stats";
+
+    public static final String NO_PEEPHOLE_FLAG = "--no-peephole";
+
+    // fuses common instruction sequences into the opcodes of bytecode minor version 2, part of the peephole pass
+    public static final String SUPERINSTRUCTIONS_FLAG = "--superinstructions";
+
+    // writes version 2 of the bytecode, which has no limits on the number of constants, functions and instructions
+    public static final String BYTECODE_V2_FLAG = "--bytecode-v2";
+
+    // leaves out line numbers, NEW_LINE instructions in version 1 and the line tables in version 2
+    public static final String STRIP_LINES_FLAG = "--strip-lines";
+
+    // prints the time, allocations and node and instruction counts of every phase to stderr, see CompileStatistics
+    public static final String STATS_FLAG = "--stats";
+
+    // like STATS_FLAG, as one line of json
+    public static final String STATS_JSON_FLAG = "--stats=json";
+
+    // lexes sources given by path from a mapping of the file, see MappedSourceReader, instead of through a
+    // BufferedUnicodeReader, which measured as fast
+    public static final String MAPPED_INPUT_FLAG = "--mapped-input";
+
+    // flags which only print reports to stderr and leave the output as it is, they are no part of a BuildCache key
+    static boolean isReportFlag(String flag){
+        return switch (flag){
+            case TIME_PASSES_FLAG, PEEPHOLE_STATS_FLAG, STATS_FLAG, STATS_JSON_FLAG -> true;
+            default -> false;
+        };
+    }
+
+    // part of the key of the BuildCache, to be raised whenever the output for some source and flags changes
+    public static final String VERSION = "1";
+
+    // analyzed trees of sources seen before, null if every source is analyzed anew
+    private final TreeCache trees;
+
+    // outputs of sources compiled before, null if every source is compiled anew
+    private final BuildCache builds;
+
+    public RabbitCompiler() {
+        this(null, null);
+    }
+
+    public RabbitCompiler(TreeCache trees) {
+        this(trees, null);
+    }
+
+    // sources given by path are looked up in the caches and only analyzed or compiled if their content is new
+    public RabbitCompiler(TreeCache trees, BuildCache builds) {
+        this.trees = trees;
+        this.builds = builds;
+    }
 
     public int run(InputStream in, OutputStream out, Logger logger, String... args){
         LoggerAdapter adapter = new LoggerAdapter(logger);
-        RootTree tree = parse(in, adapter);
-        check(tree, adapter);
+        CompileStatistics statistics = statistics(args);
+        return report(statistics, args,
+                run(analyze(new BufferedUnicodeReader(in), adapter, args, true, statistics), out, args, adapter, statistics));
+    }
+
+    public int run(Path in, OutputStream out, Logger logger, String... args) throws IOException {
+        CompileStatistics statistics = statistics(args);
+        return report(statistics, args, run(in, out, logger, args, statistics));
+    }
+
+    private int run(Path in, OutputStream out, Logger logger, String[] args, CompileStatistics statistics)
+            throws IOException {
+        return build("run", in, out, logger, args, statistics, (source, output, adapter) ->
+                run(analyze(in, source, adapter, args, true, statistics), output, args, adapter, statistics));
+    }
+
+    private int run(RootTree tree, OutputStream out, String[] args, LoggerAdapter adapter, CompileStatistics statistics){
         if (adapter.exit != 0) return adapter.exit;
-        optimize(tree);
-        generate(tree, out, false);
-        return 0;
+        return generate(tree, out, false, args, adapter, statistics);
+    }
+
+    /*
+     * Compiles every input to the path outputs gives for it, each on its own virtual thread with at most
+     * parallelism of them at once. Diagnostics are kept per file, nothing is written for a file which
+     * fails, and a file which fails does not stop the others.
+     */
+    public BatchResult runAll(List<Path> inputs, Function<Path, Path> outputs, int parallelism, String... args){
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<BatchResult.File>> futures = new ArrayList<>(inputs.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()){
+            for (Path input : inputs)
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return runOne(input, outputs.apply(input), args);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+        }
+
+        List<BatchResult.File> files = new ArrayList<>(futures.size());
+        for (Future<BatchResult.File> future : futures){
+            try {
+                files.add(future.get());
+            } catch (InterruptedException | ExecutionException e){
+                throw new IllegalStateException(e);
+            }
+        }
+        // once all files are done, so the reports of files compiled at the same time do not interleave
+        for (BatchResult.File file : files)
+            report(file.input(), file.statistics(), args);
+        return new BatchResult(files);
+    }
+
+    private BatchResult.File runOne(Path input, Path output, String[] args){
+        BufferedLogger logger = new BufferedLogger();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompileStatistics statistics = statistics(args);
+        int exit;
+        try {
+            exit = run(input, out, logger, args, statistics);
+            if (exit == 0)
+                Files.write(output, out.toByteArray());
+        } catch (IOException e){
+            logger.error(new Error("could not compile " + input + ": " + e.getMessage(), new Location(0, 0, 0)));
+            exit = -1;
+        } catch (RuntimeException e){
+            logger.error(new Error("compiler failed: " + e, new Location(0, 0, 0)));
+            exit = -1;
+        }
+        return new BatchResult.File(input, output, exit, logger.getDiagnoses(), statistics);
     }
 
     public int dis(InputStream in, OutputStream out, Logger logger, String... args){
         LoggerAdapter adapter = new LoggerAdapter(logger);
-        RootTree tree = parse(in, adapter);
-        check(tree, adapter);
+        CompileStatistics statistics = statistics(args);
+        return report(statistics, args,
+                dis(analyze(new BufferedUnicodeReader(in), adapter, args, true, statistics), out, args, adapter, statistics));
+    }
+
+    public int dis(Path in, OutputStream out, Logger logger, String... args) throws IOException {
+        CompileStatistics statistics = statistics(args);
+        return report(statistics, args, build("dis", in, out, logger, args, statistics, (source, output, adapter) ->
+                dis(analyze(in, source, adapter, args, true, statistics), output, args, adapter, statistics)));
+    }
+
+    private int dis(RootTree tree, OutputStream out, String[] args, LoggerAdapter adapter, CompileStatistics statistics){
         if (adapter.exit != 0) return adapter.exit;
-        optimize(tree);
-        generate(tree, out, true);
+        return generate(tree, out, true, args, adapter, statistics);
+    }
+
+    // compiles to rbt bytecode and runs the main function with the Interpreter, calling the given natives
+    public int interpret(Path in, Natives natives, Logger logger, String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exit = run(in, out, logger, args);
+        if (exit != 0) return exit;
+        new Interpreter(Program.load(ByteBuffer.wrap(out.toByteArray())), natives).run();
+        return 0;
+    }
+
+    // compiles to jvm bytecode and runs the main function in this jvm, calling the given natives
+    public int jit(InputStream in, Natives natives, Logger logger, String... args){
+        LoggerAdapter adapter = new LoggerAdapter(logger);
+        CompileStatistics statistics = statistics(args);
+        return jit(analyze(new BufferedUnicodeReader(in), adapter, args, true, statistics), natives, args, adapter, statistics);
+    }
+
+    public int jit(Path in, Natives natives, Logger logger, String... args) throws IOException {
+        LoggerAdapter adapter = new LoggerAdapter(logger);
+        CompileStatistics statistics = statistics(args);
+        return jit(analyze(in, null, adapter, args, true, statistics), natives, args, adapter, statistics);
+    }
+
+    // the statistics are reported before the program runs, running it is no phase of the compilation
+    private int jit(RootTree tree, Natives natives, String[] args, LoggerAdapter adapter, CompileStatistics statistics){
+        if (adapter.exit != 0) return report(statistics, args, adapter.exit);
+        JvmBytecode target = new JvmBytecode(natives);
+        generate(tree, statistics.measure(target), args, statistics);
+        report(statistics, args, 0);
+        target.run();
         return 0;
     }
 
     public int transpile(InputStream in, OutputStream out, Logger logger, String... args){
         LoggerAdapter adapter = new LoggerAdapter(logger);
-        RootTree tree = parse(in, adapter);
-        check(tree, adapter);
+        CompileStatistics statistics = statistics(args);
+        return report(statistics, args,
+                transpile(analyze(new BufferedUnicodeReader(in), adapter, args, false, statistics), out, adapter, statistics));
+    }
+
+    public int transpile(Path in, OutputStream out, Logger logger, String... args) throws IOException {
+        CompileStatistics statistics = statistics(args);
+        return report(statistics, args, build("transpile", in, out, logger, args, statistics, (source, output, adapter) ->
+                transpile(analyze(in, source, adapter, args, false, statistics), output, adapter, statistics)));
+    }
+
+    private int transpile(RootTree tree, OutputStream out, LoggerAdapter adapter, CompileStatistics statistics){
         if (adapter.exit != 0) return adapter.exit;
         CTranspiler transpiler = new CTranspiler(out);
-        tree.accept(transpiler, null);
+        statistics.begin("CTranspiler");
+        try {
+            tree.accept(transpiler, null);
+        } catch (UncheckedIOException e){
+            return writeFailed(e, adapter);
+        } finally {
+            statistics.end();
+        }
         return 0;
     }
 
-    private RootTree parse(InputStream in, Logger logger){
-        Lexer lexer = new Scanner(new UnicodeReader(in, 2), logger);
-        RabbitParser parser = new RabbitParser(lexer, logger);
+    private interface Pipeline {
+        // source is the content of the input if it was read already, the one the build cache key was made of
+        int compile(byte[] source, OutputStream out, LoggerAdapter logger) throws IOException;
+    }
+
+    // the output of the target from the build cache, or from the pipeline, which then fills the cache
+    private int build(String target, Path in, OutputStream out, Logger logger, String[] args,
+                      CompileStatistics statistics, Pipeline pipeline) throws IOException {
+        LoggerAdapter adapter = new LoggerAdapter(logger);
+        if (builds == null)
+            return pipeline.compile(null, out, adapter);
+
+        statistics.begin("BuildCache");
+        byte[] source;
+        String key;
+        boolean hit;
+        try {
+            // read once, so the output stored under the key is compiled from the very bytes it was made of
+            source = Files.readAllBytes(in);
+            key = builds.key(target, source, args);
+            hit = builds.load(key, out);
+        } finally {
+            statistics.end();
+        }
+        if (hit)
+            return 0;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BufferedLogger diagnoses = new BufferedLogger();
+        int exit = pipeline.compile(source, output, new LoggerAdapter(diagnoses));
+        diagnoses.replay(adapter);
+        // only clean outputs are kept, a hit has no diagnostics to report
+        if (exit == 0 && diagnoses.getDiagnoses().isEmpty())
+            builds.store(key, output.toByteArray());
+        try {
+            output.writeTo(out);
+        } catch (IOException e){
+            return writeFailed(new UncheckedIOException(e), adapter);
+        }
+        return exit;
+    }
+
+    static CompileStatistics statistics(String[] args){
+        return CompileStatistics.of(hasFlag(args, STATS_FLAG) || hasFlag(args, STATS_JSON_FLAG));
+    }
+
+    // prints the statistics if asked for, passes the exit value on
+    static int report(CompileStatistics statistics, String[] args, int exit){
+        if (hasFlag(args, STATS_JSON_FLAG))
+            System.err.println(statistics.toJson());
+        else if (hasFlag(args, STATS_FLAG))
+            statistics.report(System.err);
+        return exit;
+    }
+
+    // the statistics of one file of a batch if asked for, labelled by the file
+    private static void report(Path input, CompileStatistics statistics, String[] args){
+        if (hasFlag(args, STATS_JSON_FLAG))
+            System.err.println(statistics.toJson(input.toString()));
+        else if (hasFlag(args, STATS_FLAG)){
+            System.err.println(input + ":");
+            statistics.report(System.err);
+        }
+    }
+
+    // source is the content of the file if it was read already, otherwise the file is mapped or read here
+    private RootTree analyze(Path in, byte[] source, Logger logger, String[] args, boolean fold,
+                             CompileStatistics statistics) throws IOException {
+        if (trees == null){
+            if (source != null)
+                return analyze(reader(source, args), logger, args, fold, statistics);
+            if (hasFlag(args, MAPPED_INPUT_FLAG))
+                return analyze(MappedSourceReader.map(in), logger, args, fold, statistics);
+            // the whole file is scanned before analyze returns, nothing reads it later
+            try (InputStream stream = Files.newInputStream(in)){
+                return analyze(new BufferedUnicodeReader(stream), logger, args, fold, statistics);
+            }
+        }
+        // read onto the heap, a cached tree may slice names out of its source long after the file changed
+        byte[] bytes = source != null ? source : Files.readAllBytes(in);
+        return trees.get(bytes, fold, logger,
+                diagnoses -> analyze(reader(bytes, args), diagnoses, args, fold, statistics));
+    }
+
+    // a source already on the heap, lexed as MAPPED_INPUT_FLAG asks for
+    static SourceReader reader(byte[] source, String[] args){
+        if (hasFlag(args, MAPPED_INPUT_FLAG))
+            return new MappedSourceReader(ByteBuffer.wrap(source));
+        return new BufferedUnicodeReader(new ByteArrayInputStream(source));
+    }
+
+    // parses and checks the source, folds its constants unless it is transpiled
+    private RootTree analyze(SourceReader in, Logger logger, String[] args, boolean fold, CompileStatistics statistics){
+        LoggerAdapter adapter = new LoggerAdapter(logger);
+        statistics.begin("parse");
+        RootTree tree = parseForCheck(in, adapter, args);
+        statistics.end(tree);
+        // the checkers expect complete trees, a tree with parse errors is not checked
+        if (adapter.exit != 0)
+            return tree;
+        checkSource(tree, adapter, statistics);
+        if (fold && adapter.exit == 0)
+            optimize(tree, args, statistics);
+        return tree;
+    }
+
+    /*
+     * Checks a source as parsed by an IncrementalParser, for tools which check again after every edit. The
+     * tree is not folded, so the parser can keep reusing it for the following edits.
+     */
+    public int check(IncrementalParser.ParsedSource source, Logger logger){
+        LoggerAdapter adapter = new LoggerAdapter(logger);
+        for (Diagnosis diagnosis : source.getDiagnoses()){
+            if (diagnosis instanceof Error error) adapter.error(error);
+            else adapter.warning((Warning) diagnosis);
+        }
+        if (adapter.exit == 0)
+            checkSource(source.getTree(), adapter, CompileStatistics.DISABLED);
+        return adapter.exit;
+    }
+
+    private void checkSource(RootTree tree, LoggerAdapter adapter, CompileStatistics statistics){
+        if (!tree.getImports().isEmpty()){
+            ImportTree first = tree.getImports().get(0);
+            adapter.error(new Error("import of " + first.getImportedName() + " needs the program compiled as modules, see ModuleCompiler", first.getLocation()));
+        }
+        check(tree, adapter, statistics);
+    }
+
+    public RootTree parse(InputStream in, Logger logger, String... args){
+        return parse(new BufferedUnicodeReader(in), logger, args);
+    }
+
+    public RootTree parse(Path in, Logger logger, String... args) throws IOException {
+        if (hasFlag(args, MAPPED_INPUT_FLAG))
+            return parse(MappedSourceReader.map(in), logger, args);
+        try (InputStream stream = Files.newInputStream(in)){
+            return parse(new BufferedUnicodeReader(stream), logger, args);
+        }
+    }
+
+    RootTree parse(SourceReader in, Logger logger, String... args){
+        TokenBuffer tokens = TokenBuffer.scan(in, new Names(PREDEFINED_NAMES), logger);
+        boolean lazyBodies = hasFlag(args, LAZY_BODIES_FLAG);
+        if (hasFlag(args, PARALLEL_PARSE_FLAG))
+            return RabbitParser.parseProgram(tokens, logger, ForkJoinPool.commonPool(), lazyBodies);
+        RabbitParser parser = new RabbitParser(tokens, logger, lazyBodies);
         return parser.parseProgram();
     }
 
-    private void check(Tree tree, Logger logger){
-        checkWith(new DefinitionChecker(), tree, logger);
-        checkWith(new MainFunctionChecker(), tree, logger);
-        checkWith(new TypeChecker(), tree, logger);
-        //checkWith(new DanglingChecker(), tree, logger);
+    // parses the source to check it, lazy bodies are parsed as well and all diagnostics reported in source order
+    RootTree parseForCheck(SourceReader in, Logger logger, String... args){
+        if (!hasFlag(args, LAZY_BODIES_FLAG))
+            return parse(in, logger, args);
+        DeferredLogger deferred = new DeferredLogger();
+        RootTree tree = parse(in, deferred, args);
+        deferred.flush(logger);
+        return tree;
     }
 
-    private void optimize(Tree tree){
-        boolean optimizationPerformed;
-        int pass = 0;
-        do {
-            optimizationPerformed = false;
-            optimizationPerformed |= optimizeWith(new ConstantFolder(), tree);
-        }while (optimizationPerformed && (++pass < MAX_OPTIMIZATION_PASSES));
+    private static boolean hasFlag(String[] args, String flag){
+        for (String arg : args)
+            if (arg.equals(flag))
+                return true;
+        return false;
     }
 
-    private boolean optimizeWith(Optimizer<?> optimizer, Tree tree){
-        tree.accept(optimizer, null);
-        return optimizer.isOptimizationPerformed();
+    private void check(Tree tree, Logger logger, CompileStatistics statistics){
+        checkWith(new DefinitionChecker(), tree, logger, statistics);
+        checkWith(new MainFunctionChecker(), tree, logger, statistics);
+        checkWith(new TypeChecker(), tree, logger, statistics);
+        //checkWith(new DanglingChecker(), tree, logger, statistics);
     }
 
-    private void checkWith(Checker<?, ?> checker, Tree tree, Logger logger){
-        checker.check(tree, logger);
+    // the checks of a single module, which need not have a main function
+    void checkModule(Tree tree, Logger logger){
+        checkWith(new DefinitionChecker(), tree, logger, CompileStatistics.DISABLED);
+        checkWith(new TypeChecker(), tree, logger, CompileStatistics.DISABLED);
     }
 
-    private void generate(RootTree tree, OutputStream out, boolean disassembled){
-        Generator generator = new Generator();
-        Target target = getTarget(out, disassembled);
-        generator.generate(tree, target);
+    // the check of a program linked from modules
+    void checkProgram(Tree tree, Logger logger, CompileStatistics statistics){
+        checkWith(new MainFunctionChecker(), tree, logger, statistics);
+    }
+
+    void optimize(Tree tree, String[] args){
+        optimize(tree, args, CompileStatistics.DISABLED);
+    }
+
+    private void optimize(Tree tree, String[] args, CompileStatistics statistics){
+        PassManager passManager = new PassManager()
+                .register(new ConstantFolder());
+        if (statistics.isEnabled())
+            passManager.countAllocations();
+        passManager.optimize(tree);
+        statistics.add(passManager, tree);
+        if (hasFlag(args, TIME_PASSES_FLAG))
+            passManager.report(System.err);
+    }
+
+    private void checkWith(Checker<?, ?> checker, Tree tree, Logger logger, CompileStatistics statistics){
+        statistics.begin(checker.getClass().getSimpleName());
+        try {
+            checker.check(tree, logger);
+        } finally {
+            statistics.end(tree);
+        }
+    }
+
+    int generate(RootTree tree, OutputStream out, boolean disassembled, String[] args, Logger logger,
+                 CompileStatistics statistics){
+        return generate(tree, out, disassembled, args, new LoggerAdapter(logger), statistics);
+    }
+
+    private int generate(RootTree tree, OutputStream out, boolean disassembled, String[] args, LoggerAdapter logger,
+                         CompileStatistics statistics){
+        try {
+            generate(tree, out, disassembled, args, statistics);
+        } catch (UncheckedIOException e){
+            return writeFailed(e, logger);
+        } catch (OperandOverflowException e){
+            logger.error(new Error("program too large for bytecode v1, use " + BYTECODE_V2_FLAG, new Location(0, 0, 0)));
+            return logger.exit;
+        }
+        return 0;
+    }
+
+    // targets buffer their output and only fail once it is flushed
+    private int writeFailed(UncheckedIOException e, LoggerAdapter logger){
+        logger.error(new Error("could not write output: " + e.getCause().getMessage(), new Location(0, 0, 0)));
+        return logger.exit;
+    }
+
+    private void generate(RootTree tree, OutputStream out, boolean disassembled, String[] args, CompileStatistics statistics){
+        // the pool is compacted last, so references dropped by the peephole pass do not count
+        Target target = statistics.measure(new PoolCompactor(statistics.measure(
+                getTarget(out, disassembled, superinstructions(args), hasFlag(args, BYTECODE_V2_FLAG)))));
+        generate(tree, target, args, statistics);
+    }
+
+    private static boolean superinstructions(String[] args){
+        return hasFlag(args, SUPERINSTRUCTIONS_FLAG) && !hasFlag(args, NO_PEEPHOLE_FLAG);
+    }
+
+    // the target is measured by the caller already
+    private void generate(RootTree tree, Target target, String[] args, CompileStatistics statistics){
+        Generator generator = new Generator(!hasFlag(args, STRIP_LINES_FLAG));
+        statistics.begin("Generator");
+        try {
+            if (hasFlag(args, NO_PEEPHOLE_FLAG)){
+                generator.generate(tree, target);
+                return;
+            }
+            PeepholeOptimizer peephole = new PeepholeOptimizer(target, superinstructions(args));
+            generator.generate(tree, statistics.measure(peephole));
+            if (hasFlag(args, PEEPHOLE_STATS_FLAG))
+                peephole.report(System.err);
+        } finally {
+            statistics.end();
+        }
     }
 
-    private Target getTarget(OutputStream out, boolean disassembled){
+    private Target getTarget(OutputStream out, boolean disassembled, boolean superinstructions, boolean v2){
+        if (v2)
+            return disassembled
+                    ? new RabbitBytecodeDisV2(out, superinstructions)
+                    : new RabbitBytecodeV2(out, superinstructions);
         return disassembled
-                ? new RabbitBytecodeDisV1(out)
-                : new RabbitBytecodeV1(out);
+                ? new RabbitBytecodeDisV1(out, superinstructions)
+                : new RabbitBytecodeV1(out, superinstructions);
     }
 
 
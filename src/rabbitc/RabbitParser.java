@@ -10,17 +10,34 @@ import computil.util.Location;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static computil.tree.Trees.*;
 
 class RabbitParser implements Parser {
 
+    // smallest number of tokens worth parsing on a separate task
+    private static final int MIN_CHUNK_SIZE = 1 << 12;
+
+    // chunks per worker, so uneven declaration sizes still balance out
+    private static final int CHUNKS_PER_WORKER = 4;
+
     private final Lexer lexer;
     private final Logger log;
 
+    // bodies of functions are parsed on first access, which needs a TokenBuffer to revisit their tokens
+    private final boolean lazyBodies;
+
     public RabbitParser(Lexer lexer, Logger logger) {
+        this(lexer, logger, false);
+    }
+
+    // with lazy bodies the diagnostics of a body are reported when it is parsed, a DeferredLogger keeps their place
+    public RabbitParser(Lexer lexer, Logger logger, boolean lazyBodies) {
         this.lexer = lexer;
         this.log = logger;
+        this.lazyBodies = lazyBodies && lexer instanceof TokenBuffer;
     }
 
     private void error(String msg, Token token) {
@@ -34,6 +51,7 @@ class RabbitParser implements Parser {
         Token token = lexer.peek();
         while (!token.hasTag(TokenKind.EOF)){
             switch ((TokenKind)token.getTag()){
+                case IMPORT -> rootTree.imports.add(parseImport());
                 case STRUCT -> rootTree.structs.add(parseStruct());
                 case TEMPLATE -> rootTree.templates.add(parseTemplate());
                 case IMPL -> rootTree.impls.add(parseImplementation());
@@ -48,6 +66,110 @@ class RabbitParser implements Parser {
         return rootTree;
     }
 
+    static RootTree parseProgram(TokenBuffer tokens, Logger logger, ForkJoinPool pool){
+        return parseProgram(tokens, logger, pool, false);
+    }
+
+    static RootTree parseProgram(TokenBuffer tokens, Logger logger, ForkJoinPool pool, boolean lazyBodies){
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, tokens.size() / (pool.getParallelism() * CHUNKS_PER_WORKER));
+
+        List<ForkJoinTask<ParsedChunk>> tasks = new ArrayList<>();
+        int first = 0;
+        while (first < tokens.size() - 1){
+            int last = findChunkEnd(tokens, first, chunkSize);
+            TokenBuffer chunk = tokens.range(first, last);
+            tasks.add(pool.submit(() -> parseChunk(chunk, lazyBodies)));
+            first = last;
+        }
+
+        // merge in source order, replaying diagnostics as a sequential parse would report them
+        BasicRootTree rootTree = new BasicRootTree();
+        for (ForkJoinTask<ParsedChunk> task : tasks){
+            ParsedChunk chunk = task.join();
+            chunk.log.replay(logger);
+            rootTree.imports.addAll(chunk.tree.getImports());
+            rootTree.structs.addAll(chunk.tree.getStructs());
+            rootTree.templates.addAll(chunk.tree.getTemplates());
+            rootTree.impls.addAll(chunk.tree.getImpls());
+            rootTree.callables.addAll(chunk.tree.getCallables());
+        }
+        return rootTree;
+    }
+
+    private static ParsedChunk parseChunk(TokenBuffer chunk, boolean lazyBodies){
+        DeferredLogger log = new DeferredLogger();
+        RootTree tree = new RabbitParser(chunk, log, lazyBodies).parseProgram();
+        return new ParsedChunk(tree, log);
+    }
+
+    // returns the end of the first top-level declaration ending at least chunkSize tokens after first
+    private static int findChunkEnd(TokenBuffer tokens, int first, int chunkSize){
+        int eof = tokens.size() - 1;
+        int end = first;
+        do {
+            end = findDeclarationEnd(tokens, end);
+        } while (end - first < chunkSize && end < eof);
+        return end;
+    }
+
+    // a top-level declaration ends with the '}' closing its outermost block or with a ';' outside any block
+    static int findDeclarationEnd(TokenBuffer tokens, int first){
+        int eof = tokens.size() - 1;
+        int depth = 0;
+        for (int i = first; i < eof; i++){
+            switch (tokens.kindAt(i)){
+                case CURVED_OPEN -> depth++;
+                case CURVED_CLOSED -> {
+                    if (depth > 0 && --depth == 0)
+                        return i + 1;
+                }
+                case SEMI -> {
+                    if (depth == 0)
+                        return i + 1;
+                }
+            }
+        }
+        return eof;
+    }
+
+    // returns the index after the '}' matching the '{' at first, or -1 if the block is unterminated
+    static int findBlockEnd(TokenBuffer tokens, int first){
+        int eof = tokens.size() - 1;
+        int depth = 0;
+        for (int i = first; i < eof; i++){
+            switch (tokens.kindAt(i)){
+                case CURVED_OPEN -> depth++;
+                case CURVED_CLOSED -> {
+                    if (--depth == 0)
+                        return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private record ParsedChunk(RootTree tree, DeferredLogger log) {}
+
+    // import a.b; names the module in a/b.rbt, in the directory of the root file, see ModuleCompiler
+    private ImportTree parseImport(){
+        lexer.consume();
+        Token token = lexer.consume();
+        if (!token.hasTag(TokenKind.IDENTIFIER))
+            error("identifier expected", token);
+
+        Location location = token.getLocation();
+        StringBuilder name = new StringBuilder(token.getLexem());
+        while (lexer.peek().hasTag(TokenKind.DOT)){
+            lexer.consume();
+            token = lexer.consume();
+            if (!token.hasTag(TokenKind.IDENTIFIER))
+                error("identifier expected", token);
+            name.append('.').append(token.getLexem());
+        }
+        parseEOS();
+        return new BasicImportTree(name.toString(), location);
+    }
+
     private StructTree parseStruct(){
         lexer.consume();
         Token token = lexer.consume();
@@ -264,10 +386,38 @@ class RabbitParser implements Parser {
 
         functionTree.returnType = parseType();
 
+        if (lazyBodies){
+            FunctionTree lazyTree = skipBody(functionTree);
+            if (lazyTree != null)
+                return lazyTree;
+        }
+
         functionTree.body = parseBlock();
         return functionTree;
     }
 
+    // the function with its body skipped, null if the body has to be parsed right away
+    private FunctionTree skipBody(FunctionTree header){
+        TokenBuffer tokens = (TokenBuffer) lexer;
+        if (!tokens.peek().hasTag(TokenKind.CURVED_OPEN))
+            return null;
+
+        int start = tokens.position();
+        int end = findBlockEnd(tokens, start);
+        if (end < 0)
+            return null; // unterminated, report it right away
+
+        // diagnostics of the body keep their place in a deferred log, other logs get them when it is parsed
+        DeferredLogger.Body deferred = log instanceof DeferredLogger deferredLog ? deferredLog.defer() : null;
+        Logger bodyLog = deferred != null ? deferred : log;
+        LazyFunctionTree functionTree = new LazyFunctionTree(header,
+                () -> new RabbitParser(tokens.range(start, end), bodyLog).parseBlock());
+        if (deferred != null)
+            deferred.setFunction(functionTree);
+        tokens.reset(end);
+        return functionTree;
+    }
+
     private NativeFunctionTree parseNative(){
 
         Token token = lexer.consume();
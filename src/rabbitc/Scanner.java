@@ -4,12 +4,16 @@ import computil.diags.Errors;
 import computil.diags.Logger;
 import computil.parse.BasicToken;
 import computil.parse.Lexer;
+import computil.parse.Names;
 import computil.parse.Token;
-import computil.parse.UnicodeReader;
+import computil.parse.SliceToken;
+import computil.parse.SliceableReader;
+import computil.parse.SourceReader;
 import computil.util.Location;
 
 import java.math.BigInteger;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Set;
 
 public class Scanner implements Lexer {
@@ -21,7 +25,10 @@ public class Scanner implements Lexer {
                     'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F');
 
 
-    private final UnicodeReader reader;
+    private final SourceReader reader;
+    // the reader if identifiers can be sliced from it instead of copied, otherwise null
+    private final SliceableReader sliceable;
+    private final Names names;
     private final Logger log;
 
     private int line = 1;
@@ -30,13 +37,38 @@ public class Scanner implements Lexer {
 
     private Token current = null;
 
+    private char[] lexemBuffer = new char[64];
+    private int lexemLength = 0;
+
     private final ArrayDeque<Token> pushedBack = new ArrayDeque<>();
 
-    public Scanner(UnicodeReader reader, Logger log) {
+    // the token recognised by the last call to scanNext()
+    private TokenKind tokenKind;
+    private String tokenLexem;
+    private CharSequence tokenSlice;
+
+    // set while scanning into a buffer, which interns every lexem at once, so slices need not outlive a token
+    private boolean interning = false;
+    private int tokenStart, tokenEnd, tokenLine;
+
+    public Scanner(SourceReader reader, Logger log) {
+        this(reader, new Names(), log);
+    }
+
+    public Scanner(SourceReader reader, Names names, Logger log) {
         this.reader = reader;
+        this.sliceable = reader instanceof SliceableReader slices ? slices : null;
+        this.names = names;
         this.log = log;
     }
 
+    // continues scanning at a token boundary of a larger source, the reader being positioned there
+    Scanner(SourceReader reader, Names names, Logger log, int offset, int line) {
+        this(reader, names, log);
+        this.startPos = this.endPos = offset;
+        this.line = line;
+    }
+
     @Override
     public Token peek() {
         if (current == null) current = scan();
@@ -59,40 +91,76 @@ public class Scanner implements Lexer {
 
     @Override
     public boolean hasNext() {
-        return peek().hasTag(TokenKind.EOF);
+        return !peek().hasTag(TokenKind.EOF);
     }
 
     private Location createLocation(){
         return new Location(startPos, endPos, line);
     }
 
-    private Token getEOF(){
+    private void emit(TokenKind kind, String lexem){
+        emit(kind, lexem, startPos, endPos, line);
+    }
+
+    private void emit(TokenKind kind, String lexem, int start, int end, int line){
+        tokenKind = kind;
+        tokenLexem = lexem;
+        tokenSlice = null;
+        tokenStart = start;
+        tokenEnd = end;
+        tokenLine = line;
+    }
+
+    private void emitSlice(TokenKind kind, CharSequence slice){
+        emit(kind, null);
+        tokenSlice = slice;
+    }
+
+    private void emitEOF(){
         int start = endPos != 0 ? endPos-1 : 0;
-        return new BasicToken(new Location(start, endPos, line), TokenKind.EOF, null);
+        emit(TokenKind.EOF, null, start, endPos, line);
     }
 
     private Token scan(){
+        scanNext();
+        Location location = new Location(tokenStart, tokenEnd, tokenLine);
+        if (tokenSlice != null)
+            return new SliceToken(location, tokenKind, tokenSlice, names);
+        return new BasicToken(location, tokenKind, tokenLexem);
+    }
+
+    // scans the whole remaining input into the buffer without creating token objects
+    void scanInto(TokenBuffer buffer){
+        if (current != null)
+            throw new IllegalStateException("scanner already in use");
+        interning = true;
+        do {
+            scanNext();
+            buffer.append(tokenKind, tokenLexem, tokenStart, tokenEnd, tokenLine);
+        } while (tokenKind != TokenKind.EOF);
+    }
+
+    private void scanNext(){
         skipWhitespaceAndComments();
 
         if (!reader.hasNext())
-            return getEOF();
+            emitEOF();
 
-        if (nextIsNumeric())
-            return scanNumber();
+        else if (nextIsNumeric())
+            scanNumber();
 
         else if (nextIsString())
-            return scanString();
+            scanString();
 
         else if (nextIsLetter())
-            return scanIdentifierOrKeyword();
-
-        Token token = scanSpecial();
-        if (token != null) return token;
+            scanIdentifierOrKeyword();
 
-        Location location = new Location(endPos-1, endPos, line);
-        char c = consumeChar();
-        log.error(Errors.unexpectedToken(location, c));
-        return new BasicToken(location, TokenKind.ERROR, Character.toString(c));
+        else if (!scanSpecial()) {
+            Location location = new Location(startPos, startPos+1, line);
+            char c = consumeChar();
+            log.error(Errors.unexpectedToken(location, c));
+            emit(TokenKind.ERROR, Character.toString(c), location.startPos(), location.endPos(), line);
+        }
     }
 
     private char peekChar(){
@@ -105,6 +173,11 @@ public class Scanner implements Lexer {
         return c;
     }
 
+    private void pushBackChar(char c){
+        reader.pushBack(c);
+        endPos--;
+    }
+
     private void skipWhitespaceAndComments(){
         while (skipWhitespace() || skipComment())
             ;
@@ -128,15 +201,21 @@ public class Scanner implements Lexer {
     private boolean skipComment(){
         boolean skipped = false;
 
+        // most tokens are no comments, they are told apart without consuming and pushing back
+        if (peekChar() != '/'){
+            startPos = endPos;
+            return false;
+        }
+
         char first = consumeChar();
-        if (first == '/' && peekChar() == '/'){
+        if (peekChar() == '/'){
             // skip line comment
             skipped = true;
             consumeChar();
             while (reader.hasNext() && peekChar() != '\n')
                 consumeChar();
         }
-        else if (first == '/' && peekChar() == '*'){
+        else if (peekChar() == '*'){
             // skip block comment
             skipped = true;
             consumeChar();
@@ -149,54 +228,71 @@ public class Scanner implements Lexer {
                 }
             }while (reader.hasNext());
         }
-        else reader.pushBack(first);
+        else pushBackChar(first);
 
         startPos = endPos;
         return skipped;
     }
 
-    private Token scanSpecial(){
+    private boolean scanSpecial(){
         char c = peekChar();
-        return switch (c){
+        switch (c){
             case '?', '[', ']', '(', ')', '{', '}', ';', ',', '.', ':' -> {
-                consumeChar();
-                String lexem = Character.toString(c);
-                yield new BasicToken(createLocation(), TokenKind.fromLexem(lexem), lexem);
+                lexemLength = 0;
+                appendLexem(consumeChar());
+                emitLexem();
             }
             case '+', '-', '*', '/', '%', '^', '<', '>', '=', '!', '|', '&'
                     // all characters where a '=' can follow e.g. '+=' or '!='
                     -> scanPossibleEqualOperation(c);
-            default -> null;
-        };
+            default -> {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private Token scanPossibleEqualOperation(char c){
-        String lexem = Character.toString(c);
-        consumeChar();
+    private void scanPossibleEqualOperation(char c){
+        lexemLength = 0;
+        appendLexem(consumeChar());
 
         if (c == '<' && peekChar() == '<') {
-            lexem += consumeChar();
+            appendLexem(consumeChar());
             if (peekChar() == '<')
-                lexem += consumeChar();
+                appendLexem(consumeChar());
         }
         if (c == '-' && peekChar() == '>') {
-            lexem += consumeChar();
+            appendLexem(consumeChar());
         }
         else if (c == '>' && peekChar() == '>'){
-            lexem += consumeChar();
+            appendLexem(consumeChar());
         }
 
         if (peekChar() == '=')
-            lexem += consumeChar();
+            appendLexem(consumeChar());
 
         if (c == '&' && peekChar() == '&') {
-            lexem += consumeChar();
+            appendLexem(consumeChar());
         }
         else if (c == '|' && peekChar() == '|') {
-            lexem += consumeChar();
+            appendLexem(consumeChar());
         }
 
-        return new BasicToken(createLocation(), TokenKind.fromLexem(lexem), lexem);
+        emitLexem();
+    }
+
+    private void appendLexem(char c){
+        if (lexemLength == lexemBuffer.length)
+            lexemBuffer = Arrays.copyOf(lexemBuffer, lexemLength * 2);
+        lexemBuffer[lexemLength++] = c;
+    }
+
+    private void emitLexem(){
+        TokenKind kind = TokenKind.fromLexem(lexemBuffer, 0, lexemLength);
+        String lexem = kind != TokenKind.IDENTIFIER
+                ? kind.name
+                : names.fromChars(lexemBuffer, 0, lexemLength);
+        emit(kind, lexem);
     }
 
     private boolean nextIsLetter(){
@@ -204,43 +300,83 @@ public class Scanner implements Lexer {
         return Character.isLetter(c) || c == '_';
     }
 
-    private Token scanIdentifierOrKeyword(){
-        StringBuilder buffer = new StringBuilder();
+    private static boolean isIdentifierPart(char c){
+        if (c < 0x80)
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        return Character.isLetter(c) || Character.isDigit(c);
+    }
+
+    private void scanIdentifierOrKeyword(){
+        if (sliceable != null) {
+            scanSlicedIdentifierOrKeyword();
+            return;
+        }
+
+        lexemLength = 0;
         char c = peekChar();
 
-        while (Character.isLetter(c) || c == '_' || Character.isDigit(c)){
-            buffer.append(c);
+        while (isIdentifierPart(c)){
+            appendLexem(c);
+            consumeChar();
+            if (!reader.hasNext()) break;
+            c = peekChar();
+        }
+
+        emitLexem();
+    }
+
+    private void scanSlicedIdentifierOrKeyword(){
+        int start = sliceable.position();
+        char c = peekChar();
+
+        while (isIdentifierPart(c)){
             consumeChar();
             if (!reader.hasNext()) break;
             c = peekChar();
         }
 
-        String lexem = buffer.toString();
-        return new BasicToken(createLocation(), TokenKind.fromLexem(lexem), lexem);
+        // interned lexems are taken from the reader directly, keywords among them are interned as well
+        if (interning){
+            String name = sliceable.name(names, start, sliceable.position());
+            TokenKind kind = TokenKind.fromLexem(name);
+            emit(kind, kind != TokenKind.IDENTIFIER ? kind.name : name);
+            return;
+        }
+
+        CharSequence lexem = sliceable.slice(start, sliceable.position());
+        TokenKind kind = TokenKind.fromLexem(lexem);
+        if (kind != TokenKind.IDENTIFIER)
+            emit(kind, kind.name);
+        else emitSlice(kind, lexem);
     }
 
     private boolean nextIsString(){
         return peekChar() == '"';
     }
 
-    private Token scanString(){
+    private void scanString(){
         consumeChar();
         StringBuilder buffer = new StringBuilder();
         char c;
 
         do {
             char next = scanNextStringChar();
-            if (next == '"')
-                return new BasicToken(createLocation(), TokenKind.STRING, buffer.toString());
+            if (next == '"') {
+                emit(TokenKind.STRING, buffer.toString());
+                return;
+            }
             buffer.append(next);
-            if (!reader.hasNext())
+            if (!reader.hasNext()) {
                 log.error(Errors.missingSymbol(new Location(endPos-1, endPos, line), "\""));
+                emit(TokenKind.STRING, buffer.toString());
+                return;
+            }
             c = peekChar();
         } while (c != '"');
 
         consumeChar();
 
-        return new BasicToken(createLocation(), TokenKind.STRING, buffer.toString());
+        emit(TokenKind.STRING, buffer.toString());
     }
 
     private char scanNextStringChar() {
@@ -262,7 +398,7 @@ public class Scanner implements Lexer {
         return Character.isDigit(peekChar());
     }
 
-    private Token scanNumber(){
+    private void scanNumber(){
         StringBuilder buffer = new StringBuilder();
         Set<Character> radixSet = decimals;
 
@@ -274,16 +410,16 @@ public class Scanner implements Lexer {
 
         buffer.append(c);
 
-        return scanNumberByRadixSet(buffer, radixSet);
+        scanNumberByRadixSet(buffer, radixSet);
     }
 
-    private Token scanNumberByRadixSet(StringBuilder buffer, Set<Character> radixSet){
+    private void scanNumberByRadixSet(StringBuilder buffer, Set<Character> radixSet){
         boolean fractionFound = false;
         char c = peekChar();
         while (radixSet.contains(c) || c == '_' || c == '.'){
 
             if (c == '_'){
-                consume();
+                consumeChar();
                 c = peekChar();
             }
 
@@ -301,21 +437,21 @@ public class Scanner implements Lexer {
             c = peekChar();
         }
 
-        return completeToNumericToken(buffer, fractionFound, radixSet);
+        emitNumber(buffer, fractionFound, radixSet);
     }
 
-    private Token completeToNumericToken(StringBuilder buffer, boolean fractionFound, Set<Character> radixSet){
-        Location location = createLocation();
-
-        if(radixSet == decimals && fractionFound)
-            return new BasicToken(location, TokenKind.FLOAT, buffer.toString());
+    private void emitNumber(StringBuilder buffer, boolean fractionFound, Set<Character> radixSet){
+        if(radixSet == decimals && fractionFound) {
+            emit(TokenKind.FLOAT, buffer.toString());
+            return;
+        }
         int radix = radixSet.size();
         try {
             int parsed = Integer.parseInt(buffer.toString(), radix);
-            return new BasicToken(location, TokenKind.INTEGER, Integer.toString(parsed));
+            emit(TokenKind.INTEGER, Integer.toString(parsed));
         }catch (NumberFormatException e){
             BigInteger parsed = new BigInteger(buffer.toString(), radix);
-            return new BasicToken(location, TokenKind.FLOAT, parsed.toString());
+            emit(TokenKind.FLOAT, parsed.toString());
         }
     }
 
@@ -0,0 +1,305 @@
+package rabbitc;
+
+import computil.diags.Logger;
+import computil.parse.BasicToken;
+import computil.parse.Lexer;
+import computil.parse.Names;
+import computil.parse.SliceableReader;
+import computil.parse.SourceReader;
+import computil.parse.Token;
+import computil.util.Location;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class TokenBuffer implements Lexer {
+
+    private static final TokenKind[] KINDS = TokenKind.values();
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    // lexem index of tokens whose text is implied by their kind
+    private static final int IMPLIED = -1;
+
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] lexems = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // lexems are stored as their id in the names of the compilation
+    private final Names names;
+
+    // the tokens [first, last) are read by this buffer, position last yields the trailing EOF token
+    private final int first;
+    private int last;
+
+    private int cursor;
+
+    // view of the token most recently handed out, so repeated peeks share one object
+    private View view = null;
+
+    private Token endOfRange = null;
+
+    private final ArrayDeque<Token> pushedBack = new ArrayDeque<>();
+
+    private TokenBuffer(Names names) {
+        this.names = names;
+        this.first = this.cursor = 0;
+    }
+
+    // the remaining tokens of the lexer up to and including EOF
+    public static TokenBuffer of(Lexer lexer) {
+        TokenBuffer buffer = new TokenBuffer(new Names());
+        Token token = lexer.peek();
+        while (!token.hasTag(TokenKind.EOF)){
+            buffer.append(token);
+            lexer.consume();
+            token = lexer.peek();
+        }
+        buffer.append(token);
+        buffer.last = buffer.size - 1;
+        return buffer;
+    }
+
+    private TokenBuffer(TokenBuffer tokens, int first, int last) {
+        this.kinds = tokens.kinds;
+        this.starts = tokens.starts;
+        this.ends = tokens.ends;
+        this.lines = tokens.lines;
+        this.lexems = tokens.lexems;
+        this.size = tokens.size;
+        this.names = tokens.names;
+        this.first = this.cursor = first;
+        this.last = last;
+    }
+
+    public static TokenBuffer scan(SourceReader reader, Names names, Logger log){
+        TokenBuffer buffer = new TokenBuffer(names);
+        // sources take some four characters per token, sized for three the arrays rarely grow
+        if (reader instanceof SliceableReader slices)
+            buffer.ensureCapacity(slices.length() / 3 + 1);
+        new Scanner(reader, names, log).scanInto(buffer);
+        buffer.last = buffer.size - 1;
+        return buffer;
+    }
+
+    // a lexer over the tokens [first, last) followed by EOF, sharing this buffer's storage
+    public TokenBuffer range(int first, int last){
+        if (first < 0 || first > last || last >= size)
+            throw new IndexOutOfBoundsException(first);
+        return new TokenBuffer(this, first, last);
+    }
+
+    private void append(Token token){
+        Location location = token.getLocation();
+        append((TokenKind) token.getTag(), token.getLexem(),
+                location.startPos(), location.endPos(), location.line());
+    }
+
+    void append(TokenKind kind, String lexem, int start, int end, int line){
+        if (size == kinds.length)
+            grow();
+        kinds[size] = kind.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        lexems[size] = lexem == null || lexem.equals(kind.name) ? IMPLIED : names.id(lexem);
+        size++;
+    }
+
+    // the tokens [0, from) of old, followed by the inserted tokens and the tokens [to, size) of old moved by the deltas
+    static TokenBuffer splice(TokenBuffer old, int from, int to, List<Token> inserted, int charDelta, int lineDelta){
+        TokenBuffer buffer = new TokenBuffer(old.names);
+
+        int tail = old.size - to;
+        while (buffer.kinds.length < from + inserted.size() + tail)
+            buffer.grow();
+        buffer.copy(old, 0, from, 0, 0);
+        for (Token token : inserted)
+            buffer.append(token);
+        buffer.copy(old, to, tail, charDelta, lineDelta);
+        buffer.last = buffer.size - 1;
+        return buffer;
+    }
+
+    private void copy(TokenBuffer from, int index, int count, int charDelta, int lineDelta){
+        System.arraycopy(from.kinds, index, kinds, size, count);
+        System.arraycopy(from.starts, index, starts, size, count);
+        System.arraycopy(from.ends, index, ends, size, count);
+        System.arraycopy(from.lines, index, lines, size, count);
+        System.arraycopy(from.lexems, index, lexems, size, count);
+        if (charDelta != 0 || lineDelta != 0){
+            for (int i = size; i < size + count; i++){
+                starts[i] += charDelta;
+                ends[i] += charDelta;
+                lines[i] += lineDelta;
+            }
+        }
+        size += count;
+    }
+
+    private void grow(){
+        ensureCapacity(kinds.length * 2);
+    }
+
+    private void ensureCapacity(int capacity){
+        if (capacity <= kinds.length) return;
+        kinds = Arrays.copyOf(kinds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        lexems = Arrays.copyOf(lexems, capacity);
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public TokenKind kindAt(int index){
+        return KINDS[kinds[index]];
+    }
+
+    public String lexemAt(int index){
+        int lexem = lexems[index];
+        return lexem == IMPLIED ? KINDS[kinds[index]].name : names.get(lexem);
+    }
+
+    public int startAt(int index){
+        return starts[index];
+    }
+
+    public int endAt(int index){
+        return ends[index];
+    }
+
+    public int lineAt(int index){
+        return lines[index];
+    }
+
+    public Token get(int index){
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        if (view == null || view.index != index)
+            view = new View(index);
+        return view;
+    }
+
+    public int position(){
+        return cursor - pushedBack.size();
+    }
+
+    public void reset(int position){
+        if (position < first || position > last)
+            throw new IndexOutOfBoundsException(position);
+        pushedBack.clear();
+        cursor = position;
+    }
+
+    private Token at(int position){
+        if (position < last) return get(position);
+        return last == size - 1 ? get(last) : endOfRange();
+    }
+
+    // a range ends right after its last token rather than at the end of the whole input
+    private Token endOfRange(){
+        if (endOfRange == null){
+            int end = last > 0 ? ends[last - 1] : 0;
+            int line = last > 0 ? lines[last - 1] : 1;
+            endOfRange = new BasicToken(new Location(Math.max(end - 1, 0), end, line), TokenKind.EOF, null);
+        }
+        return endOfRange;
+    }
+
+    @Override
+    public Token peek() {
+        return pushedBack.isEmpty() ? at(cursor) : pushedBack.peek();
+    }
+
+    // the token offset tokens after the next one, EOF past the end
+    public Token peek(int offset) {
+        if (offset < pushedBack.size()){
+            Iterator<Token> iterator = pushedBack.iterator();
+            for (; offset > 0; offset--)
+                iterator.next();
+            return iterator.next();
+        }
+        return at(Math.min(cursor + offset - pushedBack.size(), last));
+    }
+
+    @Override
+    public Token consume() {
+        if (!pushedBack.isEmpty())
+            return pushedBack.pop();
+        Token token = at(cursor);
+        // the trailing EOF token is returned on every further call
+        if (cursor < last) cursor++;
+        return token;
+    }
+
+    @Override
+    public void pushBack(Token token) {
+        if (pushedBack.isEmpty() && token instanceof View v && v.owner() == this && v.index == cursor - 1 && cursor > first)
+            cursor--;
+        else pushedBack.push(token);
+    }
+
+    @Override
+    public void skip(int n) {
+        for (; n >= 0 && !pushedBack.isEmpty(); n--)
+            pushedBack.pop();
+        if (n >= 0) cursor = Math.min(cursor + n + 1, last);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !peek().hasTag(TokenKind.EOF);
+    }
+
+
+    private final class View implements Token {
+        private final int index;
+
+        private View(int index) {
+            this.index = index;
+        }
+
+        private TokenBuffer owner(){
+            return TokenBuffer.this;
+        }
+
+        @Override
+        public Location getLocation() {
+            return new Location(starts[index], ends[index], lines[index]);
+        }
+
+        @Override
+        public String getLexem() {
+            return lexemAt(index);
+        }
+
+        @Override
+        public Object getTag() {
+            return KINDS[kinds[index]];
+        }
+
+        @Override
+        public boolean hasTag(Object tag, Object... tags) {
+            TokenKind kind = KINDS[kinds[index]];
+            if (kind == tag) return true;
+            for (Object t : tags)
+                if (kind == t)
+                    return true;
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + getTag() + ", '" + getLexem() + "', " + getLocation() + "]";
+        }
+    }
+
+}
@@ -88,11 +88,75 @@ public enum TokenKind {
     }
     public final String name;
 
-    public static TokenKind fromLexem(String lexem){
-        for (TokenKind kind : TokenKind.values())
-            if (kind.name != null && kind.name.equals(lexem))
-                return kind;
-        return IDENTIFIER;
+    private static final int TABLE_SIZE = 256;
+
+    // perfect hash table over all fixed spellings, indexed by index(hash(name, seed))
+    private static final TokenKind[] table = new TokenKind[TABLE_SIZE];
+    private static final int seed;
+    private static final int maxLength;
+
+    static {
+        seed = findSeed();
+        int max = 0;
+        for (TokenKind kind : values()) {
+            if (kind.name == null) continue;
+            table[index(hash(kind.name, seed))] = kind;
+            max = Math.max(max, kind.name.length());
+        }
+        maxLength = max;
+    }
+
+    private static int findSeed(){
+        search:
+        for (int candidate = 31; ; candidate += 2){
+            boolean[] used = new boolean[TABLE_SIZE];
+            for (TokenKind kind : values()){
+                if (kind.name == null) continue;
+                int index = index(hash(kind.name, candidate));
+                if (used[index]) continue search;
+                used[index] = true;
+            }
+            return candidate;
+        }
+    }
+
+    private static int hash(CharSequence lexem, int seed){
+        int h = lexem.length();
+        for (int i = 0; i < lexem.length(); i++)
+            h = h * seed + lexem.charAt(i);
+        return h;
+    }
+
+    private static int hash(char[] buffer, int offset, int length, int seed){
+        int h = length;
+        for (int i = offset; i < offset + length; i++)
+            h = h * seed + buffer[i];
+        return h;
+    }
+
+    private static int index(int hash){
+        return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+    }
+
+    public static TokenKind fromLexem(CharSequence lexem){
+        int length = lexem.length();
+        if (length > maxLength) return IDENTIFIER;
+        TokenKind kind = table[index(hash(lexem, seed))];
+        if (kind == null || kind.name.length() != length) return IDENTIFIER;
+        for (int i = 0; i < length; i++)
+            if (kind.name.charAt(i) != lexem.charAt(i))
+                return IDENTIFIER;
+        return kind;
+    }
+
+    public static TokenKind fromLexem(char[] buffer, int offset, int length){
+        if (length > maxLength) return IDENTIFIER;
+        TokenKind kind = table[index(hash(buffer, offset, length, seed))];
+        if (kind == null || kind.name.length() != length) return IDENTIFIER;
+        for (int i = 0; i < length; i++)
+            if (kind.name.charAt(i) != buffer[offset + i])
+                return IDENTIFIER;
+        return kind;
     }
 
 
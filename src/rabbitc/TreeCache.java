@@ -0,0 +1,97 @@
+package rabbitc;
+
+import computil.diags.BufferedLogger;
+import computil.diags.Logger;
+import computil.tree.RootTree;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Analyzed trees by the SHA-256 of their source, for a compiler which sees the same files again, see
+ * CompileServer. A tree is kept as the checks and the constant folder leave it, together with the
+ * diagnostics found on the way, which are replayed on every hit. The folder changes trees in place, so
+ * folded and unfolded trees of one source are separate entries. Generating code leaves a tree unchanged,
+ * so several threads can compile one at once. The least recently used entry is dropped once there are
+ * more than the capacity.
+ */
+public class TreeCache {
+
+    private record Key(String hash, boolean folded) {}
+
+    private record Entry(RootTree tree, BufferedLogger diagnoses) {}
+
+    private final Map<Key, Entry> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public TreeCache(int capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // the tree of the source, analyzed into the given logger on a miss
+    RootTree get(byte[] source, boolean folded, Logger logger, Function<Logger, RootTree> analyzer){
+        Key key = new Key(hash(source), folded);
+        Entry entry = lookup(key);
+        if (entry == null){
+            // analyzed outside the lock, so compilations of other sources go on meanwhile
+            BufferedLogger diagnoses = new BufferedLogger();
+            RootTree tree;
+            try {
+                tree = analyzer.apply(diagnoses);
+            } finally {
+                // also if the analyzer throws, what it reported up to then belongs to the compilation
+                diagnoses.replay(logger);
+            }
+            store(key, new Entry(tree, diagnoses));
+            return tree;
+        }
+        entry.diagnoses().replay(logger);
+        return entry.tree();
+    }
+
+    private synchronized Entry lookup(Key key){
+        Entry entry = entries.get(key);
+        if (entry == null) misses++;
+        else hits++;
+        return entry;
+    }
+
+    private synchronized void store(Key key, Entry entry){
+        entries.put(key, entry);
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+    }
+
+    private static String hash(byte[] source){
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source));
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+}